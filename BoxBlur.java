@@ -0,0 +1,216 @@
+package com.gradescope.photoeditor;
+
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * The box blur behind Picture.blur: every Pixel becomes the average of the
+ * Pixels in the square of side 2 * radius + 1 around it, counting only the
+ * Pixels inside the picture, with red, green, blue and alpha averaged
+ * separately and rounded down.
+ *
+ * The cost per Pixel does not depend on the radius. For every column, the sum
+ * of the Pixels in the rows of the current window is kept up to date as the
+ * window moves down: one row is added and one taken away. Each output row is
+ * then a window sliding across those column sums, which again adds one column
+ * and takes one away per Pixel.
+ *
+ * The rows are split into strips that are blurred on the common pool. Each
+ * strip starts its own column sums from the rows above it, so strips never
+ * wait for each other and only ever write their own rows.
+ */
+final class BoxBlur
+{
+        // fewest rows worth giving a strip of their own; a strip is also never
+        // shorter than the window, so starting its column sums costs at most as
+        // much as blurring it
+        static final int MIN_STRIP_HEIGHT = 64;
+
+        private BoxBlur() {
+        }
+
+        /**
+         * Blurs a packed raster.
+         *
+         * @param pixels the packed ARGB Pixels, row by row, which are not changed
+         * @param width the width of the raster
+         * @param height the height of the raster
+         * @param radius the number of Pixels the square reaches on each side of
+         *      the Pixel being blurred, at least 0
+         * @return the blurred Pixels, in a new array
+         */
+        static int[] blur(int[] pixels, int width, int height, int radius) {
+        	// a square reaching past every edge already covers the whole picture
+        	radius = Math.min(radius, Math.max(width, height));
+        	int[] blurred = new int[width * height];
+        	int stripHeight = Math.max(MIN_STRIP_HEIGHT, 2 * radius + 1);
+        	int strips = (height + stripHeight - 1) / stripHeight;
+        	Strip[] tasks = new Strip[strips];
+        	for (int s = 0; s < strips; s++) {
+        		tasks[s] = new Strip(pixels, blurred, width, height, radius, s * stripHeight,
+        				Math.min(height, (s + 1) * stripHeight));
+        	}
+        	if (strips == 1) {
+        		tasks[0].compute();
+        	}
+        	else {
+        		ForkJoinTask.invokeAll(tasks);
+        	}
+        	return blurred;
+        }
+
+        /**
+         * Blurs the rows from y0 up to, but not including, y1.
+         */
+        @SuppressWarnings("serial")
+        private static final class Strip extends RecursiveAction
+        {
+        	private final int[] pixels;
+        	private final int[] blurred;
+        	private final int width;
+        	private final int height;
+        	private final int radius;
+        	private final int y0;
+        	private final int y1;
+
+        	// whether the sums over a whole window fit in an int, which is faster
+        	// to add up and divide
+        	private final boolean narrow;
+
+        	Strip(int[] pixels, int[] blurred, int width, int height, int radius, int y0, int y1) {
+        		this.pixels = pixels;
+        		this.blurred = blurred;
+        		this.width = width;
+        		this.height = height;
+        		this.radius = radius;
+        		this.y0 = y0;
+        		this.y1 = y1;
+        		long window = (long) Math.min(width, 2 * radius + 1) * Math.min(height, 2 * radius + 1);
+        		this.narrow = window * 255 <= Integer.MAX_VALUE;
+        	}
+
+        	@Override
+        	protected void compute() {
+        		int width = this.width;
+        		int radius = this.radius;
+        		// per column, the sum of each channel over the rows of the window;
+        		// 255 * height always fits in an int
+        		int[] alpha = new int[width];
+        		int[] red = new int[width];
+        		int[] green = new int[width];
+        		int[] blue = new int[width];
+        		int top = Math.max(0, this.y0 - radius);
+        		int bottom = Math.min(this.height - 1, this.y0 + radius);
+        		for (int y = top; y <= bottom; y++) {
+        			this.addRow(y, alpha, red, green, blue, 1);
+        		}
+        		for (int y = this.y0; y < this.y1; y++) {
+        			int rows = bottom - top + 1;
+        			if (this.narrow) {
+        				this.blurRow(y, rows, alpha, red, green, blue);
+        			}
+        			else {
+        				this.blurWideRow(y, rows, alpha, red, green, blue);
+        			}
+        			// slide the window one row down
+        			if (bottom < this.height - 1) {
+        				bottom++;
+        				this.addRow(bottom, alpha, red, green, blue, 1);
+        			}
+        			if (y - radius >= 0) {
+        				this.addRow(y - radius, alpha, red, green, blue, -1);
+        				top++;
+        			}
+        		}
+        	}
+
+        	/**
+        	 * Writes row y of the blurred Pixels, sliding a window across the column
+        	 * sums of the rows around it.
+        	 *
+        	 * @param rows the number of rows the column sums are over
+        	 */
+        	private void blurRow(int y, int rows, int[] alpha, int[] red, int[] green, int[] blue) {
+        		int width = this.width;
+        		int radius = this.radius;
+        		int sumAlpha = 0, sumRed = 0, sumGreen = 0, sumBlue = 0;
+        		int right = Math.min(width - 1, radius);
+        		for (int x = 0; x <= right; x++) {
+        			sumAlpha += alpha[x];
+        			sumRed += red[x];
+        			sumGreen += green[x];
+        			sumBlue += blue[x];
+        		}
+        		int rowStart = y * width;
+        		for (int x = 0; x < width; x++) {
+        			int count = rows * (right - Math.max(0, x - radius) + 1);
+        			this.blurred[rowStart + x] = sumAlpha / count << 24 | sumRed / count << 16
+        					| sumGreen / count << 8 | sumBlue / count;
+        			// slide the window one column to the right
+        			if (right < width - 1) {
+        				right++;
+        				sumAlpha += alpha[right];
+        				sumRed += red[right];
+        				sumGreen += green[right];
+        				sumBlue += blue[right];
+        			}
+        			if (x - radius >= 0) {
+        				sumAlpha -= alpha[x - radius];
+        				sumRed -= red[x - radius];
+        				sumGreen -= green[x - radius];
+        				sumBlue -= blue[x - radius];
+        			}
+        		}
+        	}
+
+        	/**
+        	 * Like blurRow, for windows too large for their sums to fit in an int.
+        	 */
+        	private void blurWideRow(int y, int rows, int[] alpha, int[] red, int[] green, int[] blue) {
+        		int width = this.width;
+        		int radius = this.radius;
+        		long sumAlpha = 0, sumRed = 0, sumGreen = 0, sumBlue = 0;
+        		int right = Math.min(width - 1, radius);
+        		for (int x = 0; x <= right; x++) {
+        			sumAlpha += alpha[x];
+        			sumRed += red[x];
+        			sumGreen += green[x];
+        			sumBlue += blue[x];
+        		}
+        		int rowStart = y * width;
+        		for (int x = 0; x < width; x++) {
+        			long count = (long) rows * (right - Math.max(0, x - radius) + 1);
+        			this.blurred[rowStart + x] = (int) (sumAlpha / count) << 24 | (int) (sumRed / count) << 16
+        					| (int) (sumGreen / count) << 8 | (int) (sumBlue / count);
+        			if (right < width - 1) {
+        				right++;
+        				sumAlpha += alpha[right];
+        				sumRed += red[right];
+        				sumGreen += green[right];
+        				sumBlue += blue[right];
+        			}
+        			if (x - radius >= 0) {
+        				sumAlpha -= alpha[x - radius];
+        				sumRed -= red[x - radius];
+        				sumGreen -= green[x - radius];
+        				sumBlue -= blue[x - radius];
+        			}
+        		}
+        	}
+
+        	/**
+        	 * Adds (or, with a sign of -1, takes away) every Pixel of row y to the
+        	 * column sums.
+        	 */
+        	private void addRow(int y, int[] alpha, int[] red, int[] green, int[] blue, int sign) {
+        		int rowStart = y * this.width;
+        		for (int x = 0; x < this.width; x++) {
+        			int argb = this.pixels[rowStart + x];
+        			alpha[x] += sign * (argb >>> 24);
+        			red[x] += sign * ((argb >> 16) & 0xFF);
+        			green[x] += sign * ((argb >> 8) & 0xFF);
+        			blue[x] += sign * (argb & 0xFF);
+        		}
+        	}
+        }
+}
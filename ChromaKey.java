@@ -0,0 +1,175 @@
+package com.gradescope.photoeditor;
+
+import java.awt.Color;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.Consumer;
+
+/**
+ * A chroma key worked out once, for keying many frames against a background,
+ * like a clip shot in front of a green screen. Picture.chromaKey uses one for
+ * a single frame.
+ *
+ * A Pixel of the frame is replaced with the Pixel of the background when its
+ * color distance to the key color is less than the threshold. As in
+ * Picture.chromaKey, (int) Math.sqrt(d) < threshold for the squared distance d
+ * exactly when the threshold is positive and d < threshold * threshold, so the
+ * key keeps that product and takes no square root per Pixel.
+ *
+ * applyAll keys as many frames at a time as the common pool has threads, and
+ * writes them into Pictures that it reuses for the frames after them.
+ */
+public final class ChromaKey
+{
+        private final int keyColor;
+
+        // Pixels whose squared color distance to the key color is less than this
+        // are replaced; 0 when nothing is
+        private final long limit;
+
+        /**
+         * Creates a key.
+         *
+         * @param keyColor the color to replace, usually the color of the screen
+         * @param threshold the color distance to the key color below which a Pixel
+         *      is replaced, as in Picture.chromaKey
+         */
+        public ChromaKey(Color keyColor, int threshold) {
+        	this(keyColor.getRGB(), threshold);
+        }
+
+        /**
+         * Creates a key from a packed color.
+         *
+         * @param keyColor the packed color to replace
+         * @param threshold the color distance to the key color below which a Pixel
+         *      is replaced
+         */
+        ChromaKey(int keyColor, int threshold) {
+        	this.keyColor = keyColor;
+        	this.limit = threshold <= 0 ? 0 : (long) threshold * threshold;
+        }
+
+        /**
+         * Keys one frame, like Picture.chromaKey.
+         *
+         * @param frame the Picture to key, which is not changed
+         * @param background the Picture that shows through, which is not changed
+         * @return a new Picture as wide and high as the smaller of the two, with
+         *      the two aligned at the top left corner
+         */
+        public Picture apply(Picture frame, Picture background) {
+        	int width = Math.min(frame.getWidth(), background.getWidth());
+        	int height = Math.min(frame.getHeight(), background.getHeight());
+        	Picture keyed = new Picture(width, height);
+        	int[] pixels = keyed.getRaster();
+        	this.key(frame.getRaster(), frame.getWidth(), background.getRaster(), background.getWidth(),
+        			pixels, width, height);
+        	keyed.setRaster(pixels);
+        	return keyed;
+        }
+
+        /**
+         * Keys every frame against the same background, handing the keyed frames
+         * to sink in the order of frames.
+         *
+         * The Picture handed to sink is reused for a later frame once sink
+         * returns, so sink must be done with it by then; a copy made with
+         * Picture(Picture) can be kept. Frames that are all the same size, as in
+         * a clip, never cause a new Picture to be made after the first few.
+         *
+         * @param frames the Pictures to key, which are not changed
+         * @param background the Picture that shows through, which is not changed
+         * @param sink what to do with each keyed frame, called on this thread
+         */
+        public void applyAll(Iterable<? extends Picture> frames, Picture background, Consumer<? super Picture> sink) {
+        	int[] backgroundPixels = background.getRaster();
+        	int batch = Math.max(1, ForkJoinPool.getCommonPoolParallelism());
+        	Frame[] tasks = new Frame[batch];
+        	Picture[] keyed = new Picture[batch];
+        	Iterator<? extends Picture> it = frames.iterator();
+        	while (it.hasNext()) {
+        		int count = 0;
+        		while (count < batch && it.hasNext()) {
+        			Picture frame = it.next();
+        			int width = Math.min(frame.getWidth(), background.getWidth());
+        			int height = Math.min(frame.getHeight(), background.getHeight());
+        			if (keyed[count] == null || keyed[count].getWidth() != width || keyed[count].getHeight() != height) {
+        				keyed[count] = new Picture(width, height);
+        			}
+        			tasks[count] = new Frame(this, frame, backgroundPixels, background.getWidth(), keyed[count]);
+        			count++;
+        		}
+        		if (count == 1) {
+        			tasks[0].compute();
+        		}
+        		else {
+        			ForkJoinTask.invokeAll(Arrays.asList(tasks).subList(0, count));
+        		}
+        		for (int f = 0; f < count; f++) {
+        			sink.accept(keyed[f]);
+        			tasks[f] = null;
+        		}
+        	}
+        }
+
+        /**
+         * Keys packed rasters aligned at their top left corners.
+         *
+         * @param frame the packed ARGB Pixels of the frame, row by row
+         * @param frameWidth the width of the frame
+         * @param background the packed ARGB Pixels of the background, row by row
+         * @param backgroundWidth the width of the background
+         * @param keyed the array to write the keyed Pixels to, row by row; like
+         *      Pixel.setColor, only red, green and blue are replaced
+         * @param width the width of keyed, at most the width of either raster
+         * @param height the height of keyed, at most the height of either raster
+         */
+        void key(int[] frame, int frameWidth, int[] background, int backgroundWidth, int[] keyed, int width, int height) {
+        	int keyColor = this.keyColor;
+        	long limit = this.limit;
+        	for (int y = 0; y < height; y++) {
+        		int from = y * frameWidth;
+        		int behind = y * backgroundWidth;
+        		int to = y * width;
+        		for (int x = 0; x < width; x++) {
+        			int p = frame[from + x];
+        			int color = Picture.colorDistanceSquared(keyColor, p) < limit ? background[behind + x] : p;
+        			keyed[to + x] = (keyed[to + x] & 0xFF000000) | (color & 0x00FFFFFF);
+        		}
+        	}
+        }
+
+        /**
+         * Keys one frame of applyAll into a reused Picture.
+         */
+        @SuppressWarnings("serial")
+        private static final class Frame extends RecursiveAction
+        {
+        	private final ChromaKey key;
+        	private final Picture frame;
+        	private final int[] background;
+        	private final int backgroundWidth;
+        	private final Picture keyed;
+
+        	Frame(ChromaKey key, Picture frame, int[] background, int backgroundWidth, Picture keyed) {
+        		this.key = key;
+        		this.frame = frame;
+        		this.background = background;
+        		this.backgroundWidth = backgroundWidth;
+        		this.keyed = keyed;
+        	}
+
+        	@Override
+        	protected void compute() {
+        		int[] pixels = this.keyed.getRaster();
+        		this.key.key(this.frame.getRaster(), this.frame.getWidth(), this.background, this.backgroundWidth,
+        				pixels, this.keyed.getWidth(), this.keyed.getHeight());
+        		// forgets anything the sink cached about the last frame written here
+        		this.keyed.setRaster(pixels);
+        	}
+        }
+}
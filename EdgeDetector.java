@@ -0,0 +1,116 @@
+package com.gradescope.photoeditor;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * The edge detection behind Picture.showEdges: a Pixel is black when its color
+ * distance to the Pixel on its left or the Pixel above it is larger than the
+ * threshold, and white otherwise.
+ *
+ * showEdges compares (int) Math.sqrt(d) with the threshold, where d is the
+ * squared color distance. Both are whole numbers, so for a threshold t of 0 or
+ * more, (int) Math.sqrt(d) > t exactly when d >= (t + 1) * (t + 1), and no
+ * square root is needed. For a negative t every Pixel is black, including
+ * (0, 0), whose missing neighbors count as a distance of 0.
+ *
+ * The rows are split into strips that are compared on the common pool; every
+ * strip reads the row above it but only writes its own rows.
+ */
+final class EdgeDetector
+{
+        static final int BLACK = 0xFF000000;
+        static final int WHITE = 0xFFFFFFFF;
+
+        // rows given to a strip of their own
+        static final int STRIP_HEIGHT = 64;
+
+        private EdgeDetector() {
+        }
+
+        /**
+         * Finds the edges of a packed raster.
+         *
+         * @param pixels the packed ARGB Pixels, row by row, which are not changed
+         * @param edges the array to write the edges to, row by row, as opaque black
+         *      or white
+         * @param width the width of the raster
+         * @param height the height of the raster
+         * @param threshold the color distance above which there is an edge
+         */
+        static void findEdges(int[] pixels, int[] edges, int width, int height, int threshold) {
+        	if (threshold < 0) {
+        		Arrays.fill(edges, 0, width * height, BLACK);
+        		return;
+        	}
+        	long limit = (threshold + 1L) * (threshold + 1L);
+        	int strips = (height + STRIP_HEIGHT - 1) / STRIP_HEIGHT;
+        	if (strips <= 1) {
+        		EdgeDetector.findEdges(pixels, edges, width, limit, 0, height);
+        		return;
+        	}
+        	Strip[] tasks = new Strip[strips];
+        	for (int s = 0; s < strips; s++) {
+        		tasks[s] = new Strip(pixels, edges, width, limit, s * STRIP_HEIGHT, Math.min(height, (s + 1) * STRIP_HEIGHT));
+        	}
+        	ForkJoinTask.invokeAll(tasks);
+        }
+
+        /**
+         * Finds the edges of the rows from y0 up to, but not including, y1.
+         *
+         * @param limit the squared color distance from which there is an edge
+         */
+        static void findEdges(int[] pixels, int[] edges, int width, long limit, int y0, int y1) {
+        	int y = y0;
+        	if (y == 0 && y < y1) {
+        		// the first row only has neighbors on the left
+        		edges[0] = WHITE;
+        		for (int x = 1; x < width; x++) {
+        			edges[x] = Picture.colorDistanceSquared(pixels[x], pixels[x - 1]) >= limit ? BLACK : WHITE;
+        		}
+        		y++;
+        	}
+        	for (; y < y1; y++) {
+        		int rowStart = y * width;
+        		int rowEnd = rowStart + width;
+        		// the first column only has a neighbor above
+        		edges[rowStart] = Picture.colorDistanceSquared(pixels[rowStart], pixels[rowStart - width]) >= limit
+        				? BLACK : WHITE;
+        		for (int i = rowStart + 1; i < rowEnd; i++) {
+        			int p = pixels[i];
+        			edges[i] = Picture.colorDistanceSquared(p, pixels[i - width]) >= limit
+        					|| Picture.colorDistanceSquared(p, pixels[i - 1]) >= limit ? BLACK : WHITE;
+        		}
+        	}
+        }
+
+        /**
+         * Finds the edges of the rows from y0 up to, but not including, y1.
+         */
+        @SuppressWarnings("serial")
+        private static final class Strip extends RecursiveAction
+        {
+        	private final int[] pixels;
+        	private final int[] edges;
+        	private final int width;
+        	private final long limit;
+        	private final int y0;
+        	private final int y1;
+
+        	Strip(int[] pixels, int[] edges, int width, long limit, int y0, int y1) {
+        		this.pixels = pixels;
+        		this.edges = edges;
+        		this.width = width;
+        		this.limit = limit;
+        		this.y0 = y0;
+        		this.y1 = y1;
+        	}
+
+        	@Override
+        	protected void compute() {
+        		EdgeDetector.findEdges(this.pixels, this.edges, this.width, this.limit, this.y0, this.y1);
+        	}
+        }
+}
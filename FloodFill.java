@@ -0,0 +1,127 @@
+package com.gradescope.photoeditor;
+
+import java.util.Arrays;
+
+/**
+ * The flood fill behind Picture.paintBucket: recolors every Pixel that can be
+ * reached from a seed Pixel through Pixels whose color distance to the seed
+ * is less than a threshold, moving up, down, left and right.
+ *
+ * The fill works a span at a time. A seed is stretched left and right into
+ * the longest run of matching Pixels in its row, which is recolored and
+ * marked as visited; then the rows above and below the span are scanned, and
+ * one new seed is pushed for each run of matching Pixels found there. Seeds
+ * are Pixel indices kept on a stack in an int array, and visited Pixels are
+ * bits of a long array, so the fill makes no objects per Pixel or per span
+ * and never recurses.
+ *
+ * Colors are compared through the squared color distance, so no square root
+ * is taken per Pixel: floor(sqrt(d)) < threshold exactly when threshold is
+ * positive and d < threshold * threshold.
+ */
+final class FloodFill
+{
+        private FloodFill() {
+        }
+
+        /**
+         * Fills the region around (x, y) in place.
+         *
+         * @param pixels the packed ARGB Pixels, row by row
+         * @param width the width of the raster
+         * @param height the height of the raster
+         * @param x the x-coordinate of the seed
+         * @param y the y-coordinate of the seed
+         * @param threshold the color distance to the seed that Pixels in the region
+         *      must be under
+         * @param rgb the packed color to give the region; like Pixel.setColor, only
+         *      red, green and blue are replaced
+         * @return the number of Pixels recolored
+         */
+        static int fill(int[] pixels, int width, int height, int x, int y, int threshold, int rgb) {
+        	if (threshold <= 0) {
+        		// not even the seed is closer than that to itself
+        		return 0;
+        	}
+        	long limit = (long) threshold * threshold;
+        	int seedColor = pixels[y * width + x];
+        	rgb &= 0x00FFFFFF;
+        	long[] visited = new long[(int) (((long) width * height + 63) >>> 6)];
+        	int[] stack = new int[64];
+        	int size = 0;
+        	int filled = 0;
+        	stack[size++] = y * width + x;
+        	while (size > 0) {
+        		int seed = stack[--size];
+        		if (FloodFill.isSet(visited, seed)) {
+        			continue;
+        		}
+        		int row = seed / width;
+        		int rowStart = row * width;
+        		int rowEnd = rowStart + width - 1;
+        		// stretch the seed into a span
+        		int left = seed;
+        		while (left > rowStart && !FloodFill.isSet(visited, left - 1)
+        				&& Picture.colorDistanceSquared(seedColor, pixels[left - 1]) < limit) {
+        			left--;
+        		}
+        		int right = seed;
+        		while (right < rowEnd && !FloodFill.isSet(visited, right + 1)
+        				&& Picture.colorDistanceSquared(seedColor, pixels[right + 1]) < limit) {
+        			right++;
+        		}
+        		FloodFill.setRange(visited, left, right);
+        		for (int i = left; i <= right; i++) {
+        			pixels[i] = (pixels[i] & 0xFF000000) | rgb;
+        		}
+        		filled += right - left + 1;
+        		// one seed for each run of matching Pixels next to the span; only
+        		// unvisited Pixels are compared, so the recolored ones never are
+        		for (int next = -width; next <= width; next += 2 * width) {
+        			if ((next < 0 && row == 0) || (next > 0 && row == height - 1)) {
+        				continue;
+        			}
+        			boolean inRun = false;
+        			for (int i = left + next; i <= right + next; i++) {
+        				if (!FloodFill.isSet(visited, i) && Picture.colorDistanceSquared(seedColor, pixels[i]) < limit) {
+        					if (!inRun) {
+        						if (size == stack.length) {
+        							stack = Arrays.copyOf(stack, 2 * size);
+        						}
+        						stack[size++] = i;
+        						inRun = true;
+        					}
+        				}
+        				else {
+        					inRun = false;
+        				}
+        			}
+        		}
+        	}
+        	return filled;
+        }
+
+        private static boolean isSet(long[] bits, int i) {
+        	// shifts of a long only use the low 6 bits of i
+        	return (bits[i >>> 6] & (1L << i)) != 0;
+        }
+
+        /**
+         * Sets the bits from first to last, both included.
+         */
+        private static void setRange(long[] bits, int first, int last) {
+        	int firstWord = first >>> 6;
+        	int lastWord = last >>> 6;
+        	long firstMask = -1L << first;
+        	long lastMask = -1L >>> (63 - (last & 63));
+        	if (firstWord == lastWord) {
+        		bits[firstWord] |= firstMask & lastMask;
+        		return;
+        	}
+        	bits[firstWord] |= firstMask;
+        	for (int w = firstWord + 1; w < lastWord; w++) {
+        		bits[w] = -1L;
+        	}
+        	bits[lastWord] |= lastMask;
+        }
+}
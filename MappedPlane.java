@@ -0,0 +1,136 @@
+package com.gradescope.photoeditor;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A plane of ints or bytes, stride by height, kept in a temporary file that is
+ * mapped into memory rather than on the heap. The operating system pages it
+ * in and out as it is used, so a plane can be much larger than the heap.
+ *
+ * A single mapping cannot be larger than 2 GB, so the plane is mapped in
+ * blocks of whole rows. (x, y) is element y * stride + x of the file, and rows
+ * never cross from one block to the next.
+ */
+final class MappedPlane implements Closeable
+{
+        // largest block mapped at once
+        static final long BLOCK_BYTES = 1L << 30;
+
+        private final Path file;
+        private final FileChannel channel;
+        private final int stride;
+        private final int height;
+        private final int rowsPerBlock;
+
+        // the blocks as bytes, and as ints for a plane of ints
+        private final ByteBuffer[] bytes;
+        private final IntBuffer[] ints;
+
+        /**
+         * Creates a plane, filled with zeros, in a new temporary file.
+         *
+         * @param directory where to put the file
+         * @param stride the number of elements in a row
+         * @param height the number of rows
+         * @param elementSize 4 for a plane of ints, 1 for a plane of bytes
+         * @throws IOException if the file cannot be created or mapped
+         */
+        MappedPlane(Path directory, int stride, int height, int elementSize) throws IOException {
+        	this.file = Files.createTempFile(directory, "plane", ".bin");
+        	this.channel = FileChannel.open(this.file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        	this.stride = stride;
+        	this.height = height;
+        	long rowBytes = (long) stride * elementSize;
+        	this.rowsPerBlock = (int) Math.max(1, Math.min(height, BLOCK_BYTES / rowBytes));
+        	int blocks = (height + this.rowsPerBlock - 1) / this.rowsPerBlock;
+        	this.bytes = new ByteBuffer[blocks];
+        	this.ints = elementSize == 4 ? new IntBuffer[blocks] : null;
+        	for (int b = 0; b < blocks; b++) {
+        		int rows = Math.min(this.rowsPerBlock, height - b * this.rowsPerBlock);
+        		MappedByteBuffer block = this.channel.map(FileChannel.MapMode.READ_WRITE,
+        				b * this.rowsPerBlock * rowBytes, rows * rowBytes);
+        		this.bytes[b] = block.order(ByteOrder.nativeOrder());
+        		if (this.ints != null) {
+        			this.ints[b] = this.bytes[b].asIntBuffer();
+        		}
+        	}
+        }
+
+        /**
+         * @return the number of elements in a row
+         */
+        int getStride() {
+        	return this.stride;
+        }
+
+        /**
+         * @return the number of rows
+         */
+        int getHeight() {
+        	return this.height;
+        }
+
+        int getInt(int x, int y) {
+        	return this.ints[y / this.rowsPerBlock].get(this.offset(x, y));
+        }
+
+        void putInt(int x, int y, int value) {
+        	this.ints[y / this.rowsPerBlock].put(this.offset(x, y), value);
+        }
+
+        byte getByte(int x, int y) {
+        	return this.bytes[y / this.rowsPerBlock].get(this.offset(x, y));
+        }
+
+        /**
+         * Copies length ints of row y, starting at column x, into values.
+         */
+        void getInts(int x, int y, int[] values, int offset, int length) {
+        	this.ints[y / this.rowsPerBlock].get(this.offset(x, y), values, offset, length);
+        }
+
+        /**
+         * Copies length ints from values into row y, starting at column x.
+         */
+        void putInts(int x, int y, int[] values, int offset, int length) {
+        	this.ints[y / this.rowsPerBlock].put(this.offset(x, y), values, offset, length);
+        }
+
+        /**
+         * Copies length bytes from values into row y, starting at column x.
+         */
+        void putBytes(int x, int y, byte[] values, int offset, int length) {
+        	this.bytes[y / this.rowsPerBlock].put(this.offset(x, y), values, offset, length);
+        }
+
+        /**
+         * Closes the file and deletes it. The plane must not be used afterwards.
+         */
+        @Override
+        public void close() throws IOException {
+        	this.channel.close();
+        	try {
+        		Files.deleteIfExists(this.file);
+        	}
+        	catch (IOException e) {
+        		// some systems do not delete a file while it is still mapped
+        		this.file.toFile().deleteOnExit();
+        	}
+        }
+
+        /**
+         * @return the index of (x, y) in the block that holds row y
+         */
+        private int offset(int x, int y) {
+        	return (y % this.rowsPerBlock) * this.stride + x;
+        }
+}
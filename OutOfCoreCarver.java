@@ -0,0 +1,351 @@
+package com.gradescope.photoeditor;
+
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+import java.awt.image.DataBuffer;
+import java.awt.image.DirectColorModel;
+import java.awt.image.Raster;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.awt.image.WritableRaster;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+
+/**
+ * Removes vertical seams from images too large for the heap, like scanned maps
+ * and panoramas of a gigapixel or more, with the same seams as
+ * Picture.carveMany. (A Picture draws a translucent image over black when it
+ * loads it; the carver keeps the alpha of every Pixel as it is, so only opaque
+ * images are sure to get the same seams.)
+ *
+ * The Pixels, the energy of every Pixel and the parent step of every cell of
+ * the seam search live in memory-mapped files (see MappedPlane): 9 bytes per
+ * Pixel on disk, and only a few rows and one seam on the heap, whatever the
+ * size of the image.
+ *
+ * The image is decoded straight into the mapped Pixels where the reader allows
+ * it (PNG, JPEG and TIFF do), and a strip of rows at a time otherwise. The
+ * energy is computed once, a pair of rows at a time, and then kept up to date
+ * like in SeamCarver: after each seam, every row is closed up past the seam in
+ * place and only the energy of the two Pixels around it is recomputed. The
+ * seam search sweeps the energy row by row with SeamSolver.fillRow, storing
+ * the parent steps in their own mapped plane, and traces the seam back up.
+ *
+ * The planes are deleted by close().
+ */
+public final class OutOfCoreCarver implements Closeable
+{
+        // rows decoded at a time by readers that cannot decode into the mapped Pixels
+        static final int STRIP_HEIGHT = 64;
+
+        private final int stride;
+        private final int height;
+        private int width;
+        private final boolean hasAlpha;
+
+        // (x, y) is at column x of row y in every plane; only the first width
+        // columns are in use
+        private final MappedPlane pixels;
+        private final MappedPlane energy;
+        private final MappedPlane moves;
+
+        // scratch rows, reused for every seam
+        private int[] previous;
+        private int[] current;
+        private final int[] row;
+        private final byte[] moveRow;
+
+        /**
+         * Decodes an image into memory-mapped files and computes its energy.
+         *
+         * @param source the image file, in any format ImageIO can read
+         * @param workDirectory where to put the mapped files, which need 9 bytes per
+         *      Pixel of the image
+         * @throws IOException if the image cannot be read or the files cannot be made
+         * @throws IllegalArgumentException if the image is less than 2 Pixels wide or high
+         */
+        public OutOfCoreCarver(File source, File workDirectory) throws IOException {
+        	ImageInputStream input = ImageIO.createImageInputStream(source);
+        	if (input == null) {
+        		throw new IOException("Cannot open " + source);
+        	}
+        	Iterator<ImageReader> readers = ImageIO.getImageReaders(input);
+        	if (!readers.hasNext()) {
+        		input.close();
+        		throw new IOException("No reader for " + source);
+        	}
+        	ImageReader reader = readers.next();
+        	MappedPlane pixels = null;
+        	MappedPlane energy = null;
+        	MappedPlane moves = null;
+        	try {
+        		reader.setInput(input, false, true);
+        		this.width = reader.getWidth(0);
+        		this.height = reader.getHeight(0);
+        		if (this.width < 2 || this.height < 2) {
+        			throw new IllegalArgumentException("Cannot carve an image of size " + this.width + "x" + this.height);
+        		}
+        		this.stride = this.width;
+        		this.hasAlpha = reader.getImageTypes(0).next().getColorModel().hasAlpha();
+        		pixels = new MappedPlane(workDirectory.toPath(), this.stride, this.height, 4);
+        		energy = new MappedPlane(workDirectory.toPath(), this.stride, this.height, 4);
+        		moves = new MappedPlane(workDirectory.toPath(), this.stride, this.height, 1);
+        		this.pixels = pixels;
+        		this.energy = energy;
+        		this.moves = moves;
+        		this.previous = new int[this.stride];
+        		this.current = new int[this.stride];
+        		this.row = new int[this.stride];
+        		this.moveRow = new byte[this.stride];
+        		this.decode(reader, input);
+        		this.computeEnergy();
+        	}
+        	catch (IOException | RuntimeException e) {
+        		for (MappedPlane plane : new MappedPlane[] { pixels, energy, moves }) {
+        			if (plane != null) {
+        				plane.close();
+        			}
+        		}
+        		throw e;
+        	}
+        	finally {
+        		reader.dispose();
+        		input.close();
+        	}
+        }
+
+        /**
+         * @return the width of the image after the seams removed so far
+         */
+        public int getWidth() {
+        	return this.width;
+        }
+
+        /**
+         * @return the height of the image
+         */
+        public int getHeight() {
+        	return this.height;
+        }
+
+        /**
+         * Removes numSeams seams, one after another, like Picture.carveMany.
+         *
+         * @param numSeams the number of seams to remove
+         * @throws IllegalArgumentException if numSeams is negative or would leave
+         *      nothing of the image
+         */
+        public void carveMany(int numSeams) {
+        	if (numSeams < 0 || numSeams >= this.width) {
+        		throw new IllegalArgumentException("Cannot carve " + numSeams + " seams from an image of width " + this.width);
+        	}
+        	for (int i = 0; i < numSeams; i++) {
+        		this.removeSeam(this.computeSeam());
+        	}
+        }
+
+        /**
+         * @return the lowest-energy vertical seam of the current image, exactly
+         *      what Picture.computeSeam() would return for it
+         */
+        public int[] computeSeam() {
+        	int width = this.width;
+        	this.energy.getInts(0, 0, this.previous, 0, width);
+        	for (int y = 1; y < this.height; y++) {
+        		this.energy.getInts(0, y, this.row, 0, width);
+        		SeamSolver.fillRow(this.previous, 0, this.current, 0, this.row, 0, 1, this.moveRow, 0,
+        				0, width, 0, width, width - 1);
+        		this.moves.putBytes(0, y, this.moveRow, 0, width);
+        		int[] swap = this.previous;
+        		this.previous = this.current;
+        		this.current = swap;
+        	}
+        	// the seam ends at the first column with the smallest total in the last row
+        	int[] seam = new int[this.height];
+        	int minColumn = 0;
+        	for (int x = 1; x < width; x++) {
+        		if (this.previous[x] < this.previous[minColumn]) {
+        			minColumn = x;
+        		}
+        	}
+        	seam[this.height - 1] = minColumn;
+        	for (int y = this.height - 1; y > 0; y--) {
+        		seam[y - 1] = seam[y] + this.moves.getByte(seam[y], y);
+        	}
+        	return seam;
+        }
+
+        /**
+         * Removes a seam from the mapped Pixels in place and brings the energy up
+         * to date.
+         *
+         * @param seam the x-coordinate of the seam in every row, as returned by
+         *      computeSeam()
+         */
+        public void removeSeam(int[] seam) {
+        	for (int y = 0; y < this.height; y++) {
+        		int x = seam[y];
+        		int length = this.width - x - 1;
+        		this.pixels.getInts(x + 1, y, this.row, 0, length);
+        		this.pixels.putInts(x, y, this.row, 0, length);
+        		this.energy.getInts(x + 1, y, this.row, 0, length);
+        		this.energy.putInts(x, y, this.row, 0, length);
+        	}
+        	this.width--;
+        	if (this.width < 2) {
+        		// a single column has no energy left to keep up to date
+        		return;
+        	}
+        	for (int y = 0; y < this.height; y++) {
+        		// only the Pixel left of the seam and the one that moved into its place can
+        		// have a different right-hand or lower neighbour than before
+        		int from = Math.max(0, seam[y] - 1);
+        		int to = Math.min(this.width - 1, seam[y]);
+        		for (int x = from; x <= to; x++) {
+        			this.energy.putInt(x, y, this.energyOf(x, y));
+        		}
+        	}
+        }
+
+        /**
+         * Returns the current image, read straight from the mapped Pixels. It is
+         * only valid until the next seam is removed or the carver is closed.
+         *
+         * @return an image getWidth() wide and getHeight() high
+         */
+        public BufferedImage getImage() {
+        	ColorModel model = this.hasAlpha ? ColorModel.getRGBdefault() : new DirectColorModel(24, 0xFF0000, 0xFF00, 0xFF);
+        	SinglePixelPackedSampleModel layout = new SinglePixelPackedSampleModel(DataBuffer.TYPE_INT,
+        			this.width, this.height, this.stride, ((DirectColorModel) model).getMasks());
+        	WritableRaster raster = Raster.createWritableRaster(layout, new PlaneDataBuffer(this.pixels), null);
+        	return new BufferedImage(model, raster, false, null);
+        }
+
+        /**
+         * Encodes the current image into a file, reading it straight from the
+         * mapped Pixels.
+         *
+         * @param destination the file to write
+         * @param formatName the informal name of the format, like "png" or "tiff"
+         * @throws IOException if the file cannot be written or there is no writer
+         *      for the format
+         */
+        public void write(File destination, String formatName) throws IOException {
+        	if (!ImageIO.write(this.getImage(), formatName, destination)) {
+        		throw new IOException("No writer for " + formatName);
+        	}
+        }
+
+        /**
+         * Deletes the mapped files. The carver must not be used afterwards.
+         */
+        @Override
+        public void close() throws IOException {
+        	this.pixels.close();
+        	this.energy.close();
+        	this.moves.close();
+        }
+
+        /**
+         * Decodes the image into the mapped Pixels, straight into them if the
+         * reader accepts them as its destination and a strip of rows at a time
+         * otherwise.
+         */
+        private void decode(ImageReader reader, ImageInputStream input) throws IOException {
+        	ImageReadParam param = reader.getDefaultReadParam();
+        	param.setDestination(this.getImage());
+        	try {
+        		reader.read(0, param);
+        		return;
+        	}
+        	catch (RuntimeException e) {
+        		// the reader only writes to the kind of buffer it makes itself, and BMP
+        		// and GIF readers fail in their own ways, leaving the reader half way
+        		// through the image
+        	}
+        	input.seek(0);
+        	reader.setInput(input, false, true);
+        	param = reader.getDefaultReadParam();
+        	for (int y0 = 0; y0 < this.height; y0 += STRIP_HEIGHT) {
+        		int rows = Math.min(STRIP_HEIGHT, this.height - y0);
+        		param.setSourceRegion(new Rectangle(0, y0, this.width, rows));
+        		BufferedImage strip = reader.read(0, param);
+        		for (int y = 0; y < rows; y++) {
+        			strip.getRGB(0, y, this.width, 1, this.row, 0, this.width);
+        			this.pixels.putInts(0, y0 + y, this.row, 0, this.width);
+        		}
+        	}
+        }
+
+        /**
+         * Computes the energy of every Pixel, a pair of rows of luminosity at a
+         * time, exactly like Picture.energyPlane().
+         */
+        private void computeEnergy() {
+        	int width = this.width;
+        	// luminosity of row y in the first half and of row y + 1 in the second
+        	byte[] pair = new byte[2 * width];
+        	this.pixels.getInts(0, 0, this.row, 0, width);
+        	for (int x = 0; x < width; x++) {
+        		pair[x] = (byte) Picture.luminosityOf(this.row[x]);
+        	}
+        	for (int y = 0; y < this.height - 1; y++) {
+        		this.pixels.getInts(0, y + 1, this.row, 0, width);
+        		for (int x = 0; x < width; x++) {
+        			pair[width + x] = (byte) Picture.luminosityOf(this.row[x]);
+        		}
+        		RasterKernels.INSTANCE.energyRow(pair, width, width, 2, 0, this.current, 0);
+        		this.energy.putInts(0, y, this.current, 0, width);
+        		if (y == this.height - 2) {
+        			// the last row looks up instead of down
+        			RasterKernels.INSTANCE.energyRow(pair, width, width, 2, 1, this.current, 0);
+        			this.energy.putInts(0, y + 1, this.current, 0, width);
+        		}
+        		System.arraycopy(pair, width, pair, 0, width);
+        	}
+        }
+
+        /**
+         * Works out the energy of one Pixel from the mapped Pixels, like
+         * Picture.energyOf.
+         */
+        private int energyOf(int x, int y) {
+        	int lumin = Picture.luminosityOf(this.pixels.getInt(x, y));
+        	int luminTwoX = Picture.luminosityOf(this.pixels.getInt(x == this.width - 1 ? x - 1 : x + 1, y));
+        	int luminTwoY = Picture.luminosityOf(this.pixels.getInt(x, y == this.height - 1 ? y - 1 : y + 1));
+        	return Math.abs(luminTwoX - lumin) + Math.abs(luminTwoY - lumin);
+        }
+
+        /**
+         * Lets an image read and write the mapped Pixels, so that readers can
+         * decode into them and writers can encode from them.
+         */
+        private static final class PlaneDataBuffer extends DataBuffer
+        {
+        	private final MappedPlane plane;
+
+        	PlaneDataBuffer(MappedPlane plane) {
+        		super(DataBuffer.TYPE_INT, plane.getStride() * plane.getHeight());
+        		this.plane = plane;
+        	}
+
+        	@Override
+        	public int getElem(int bank, int i) {
+        		int y = i / this.plane.getStride();
+        		return this.plane.getInt(i - y * this.plane.getStride(), y);
+        	}
+
+        	@Override
+        	public void setElem(int bank, int i, int val) {
+        		int y = i / this.plane.getStride();
+        		this.plane.putInt(i - y * this.plane.getStride(), y, val);
+        	}
+        }
+}
@@ -0,0 +1,307 @@
+package com.gradescope.photoeditor;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+
+/**
+ * A chain of color adjustments that is only carried out when the result is
+ * asked for, in one pass over the Pixels. Calling
+ *
+ *      pic.ops().lighten(20).addRed(10).negate().grayscale().toPicture()
+ *
+ * gives the same Picture as pic.lighten(20).addRed(10).negate().grayscale(),
+ * but copies the Picture once instead of four times.
+ *
+ * Adjustments that change each channel on its own (lighten, darken, the add
+ * family and negate) are composed as they are added into one 256-entry lookup
+ * table per channel, so any number of them costs three lookups per Pixel.
+ * grayscale and luminosity mix the channels, so they end a table: the Pixel
+ * goes through the tables, is mixed, and then goes through the tables of the
+ * adjustments added after the mix.
+ *
+ * Every adjustment keeps the alpha of the Pixels, like the Picture methods of
+ * the same name.
+ *
+ * Since every adjustment only looks at one Pixel, a chain can also be streamed
+ * from one image file to another with stream, a strip of rows at a time,
+ * without the image ever being all in memory.
+ */
+public final class PictureOps
+{
+        // how a stage mixes the channels after its tables
+        private static final int NO_MIX = 0;
+        private static final int GRAYSCALE = 1;
+        private static final int LUMINOSITY = 2;
+
+        // Pixels that stream decodes at a time
+        static final int STRIP_PIXELS = 1 << 22;
+
+        private final Picture source;
+        private final List<Stage> stages = new ArrayList<Stage>();
+
+        /**
+         * Creates an empty chain, to be applied with apply or applyTo.
+         */
+        public PictureOps() {
+        	this(null);
+        }
+
+        /**
+         * Creates an empty chain for the Picture provided, to be applied with
+         * toPicture. Usually called through Picture.ops().
+         *
+         * @param source the Picture to adjust
+         */
+        PictureOps(Picture source) {
+        	this.source = source;
+        	this.stages.add(new Stage());
+        }
+
+        /**
+         * Adds an amount to the red, green and blue of every Pixel, keeping each
+         * between 0 and 255, like Picture.rgbValueHelper.
+         *
+         * @param r the amount to add to red
+         * @param g the amount to add to green
+         * @param b the amount to add to blue
+         * @return this chain
+         */
+        public PictureOps rgbValue(int r, int g, int b) {
+        	Stage stage = this.openStage();
+        	for (int v = 0; v < 256; v++) {
+        		stage.red[v] = Math.max(0, Math.min(255, stage.red[v] + r));
+        		stage.green[v] = Math.max(0, Math.min(255, stage.green[v] + g));
+        		stage.blue[v] = Math.max(0, Math.min(255, stage.blue[v] + b));
+        	}
+        	return this;
+        }
+
+        /**
+         * @param lightenAmount the amount to add to every channel
+         * @return this chain
+         * @see Picture#lighten(int)
+         */
+        public PictureOps lighten(int lightenAmount) {
+        	return this.rgbValue(lightenAmount, lightenAmount, lightenAmount);
+        }
+
+        /**
+         * @param darkenAmount the amount to take from every channel
+         * @return this chain
+         * @see Picture#darken(int)
+         */
+        public PictureOps darken(int darkenAmount) {
+        	return this.rgbValue(-darkenAmount, -darkenAmount, -darkenAmount);
+        }
+
+        /**
+         * @param amount the amount to add to red
+         * @return this chain
+         * @see Picture#addRed(int)
+         */
+        public PictureOps addRed(int amount) {
+        	return this.rgbValue(amount, 0, 0);
+        }
+
+        /**
+         * @param amount the amount to add to green
+         * @return this chain
+         * @see Picture#addGreen(int)
+         */
+        public PictureOps addGreen(int amount) {
+        	return this.rgbValue(0, amount, 0);
+        }
+
+        /**
+         * @param amount the amount to add to blue
+         * @return this chain
+         * @see Picture#addBlue(int)
+         */
+        public PictureOps addBlue(int amount) {
+        	return this.rgbValue(0, 0, amount);
+        }
+
+        /**
+         * @return this chain
+         * @see Picture#negate()
+         */
+        public PictureOps negate() {
+        	Stage stage = this.openStage();
+        	for (int v = 0; v < 256; v++) {
+        		stage.red[v] = 255 - stage.red[v];
+        		stage.green[v] = 255 - stage.green[v];
+        		stage.blue[v] = 255 - stage.blue[v];
+        	}
+        	return this;
+        }
+
+        /**
+         * @return this chain
+         * @see Picture#grayscale()
+         */
+        public PictureOps grayscale() {
+        	this.openStage().mix = GRAYSCALE;
+        	return this;
+        }
+
+        /**
+         * @return this chain
+         * @see Picture#luminosity()
+         */
+        public PictureOps luminosity() {
+        	this.openStage().mix = LUMINOSITY;
+        	return this;
+        }
+
+        /**
+         * Applies the chain to the Picture it was created for.
+         *
+         * @return a new Picture with every adjustment applied
+         * @throws IllegalStateException if the chain was not created by Picture.ops()
+         */
+        public Picture toPicture() {
+        	if (this.source == null) {
+        		throw new IllegalStateException("No Picture to adjust; use apply(Picture) instead");
+        	}
+        	return this.apply(this.source);
+        }
+
+        /**
+         * Applies the chain to a Picture.
+         *
+         * @param picture the Picture to adjust, which is not changed
+         * @return a new Picture with every adjustment applied
+         */
+        public Picture apply(Picture picture) {
+        	int[] pixels = picture.getRasterCopy();
+        	this.applyTo(pixels, 0, pixels.length);
+        	return picture.copyWithRaster(pixels);
+        }
+
+        /**
+         * Applies the chain to an image file and encodes the result into another,
+         * a strip of rows at a time: each strip is read from the source as a
+         * source region, adjusted and handed to the writer before the next one is
+         * read. With PNG, BMP and TIFF writers, which take the rows one at a time,
+         * only a strip of about four million Pixels is ever in memory, whatever the
+         * size of the image; other writers may ask for the whole image at once.
+         *
+         * Readers that can only decode from the top of the image, like PNG and
+         * JPEG readers, decode the rows above a strip again to reach it.
+         *
+         * @param source the image file to adjust, in any format ImageIO can read
+         * @param destination the file to write
+         * @param formatName the informal name of the format to write, like "png"
+         * @throws IOException if the source cannot be read, or the destination
+         *      cannot be written or there is no writer for the format
+         */
+        public void stream(File source, File destination, String formatName) throws IOException {
+        	ImageInputStream input = ImageIO.createImageInputStream(source);
+        	if (input == null) {
+        		throw new IOException("Cannot open " + source);
+        	}
+        	Iterator<ImageReader> readers = ImageIO.getImageReaders(input);
+        	if (!readers.hasNext()) {
+        		input.close();
+        		throw new IOException("No reader for " + source);
+        	}
+        	ImageReader reader = readers.next();
+        	try {
+        		// strips are read as source regions, which can mean seeking back
+        		reader.setInput(input, false, true);
+        		int stripHeight = Math.max(1, STRIP_PIXELS / reader.getWidth(0));
+        		if (!ImageIO.write(new StripImage(reader, this, stripHeight), formatName, destination)) {
+        			throw new IOException("No writer for " + formatName);
+        		}
+        	}
+        	catch (UncheckedIOException e) {
+        		throw e.getCause();
+        	}
+        	finally {
+        		reader.dispose();
+        		input.close();
+        	}
+        }
+
+        /**
+         * Applies the chain in place to part of a packed ARGB raster, laid out as
+         * in Picture.getRaster().
+         *
+         * @param pixels the packed ARGB Pixels to change
+         * @param from the first index
+         * @param to one past the last index
+         */
+        public void applyTo(int[] pixels, int from, int to) {
+        	Stage[] stages = this.stages.toArray(new Stage[0]);
+        	if (stages.length == 1 && stages[0].mix == NO_MIX) {
+        		// only per-channel adjustments, the usual case
+        		int[] red = stages[0].red;
+        		int[] green = stages[0].green;
+        		int[] blue = stages[0].blue;
+        		for (int i = from; i < to; i++) {
+        			int argb = pixels[i];
+        			pixels[i] = (argb & 0xFF000000) | (red[(argb >> 16) & 0xFF] << 16)
+        					| (green[(argb >> 8) & 0xFF] << 8) | blue[argb & 0xFF];
+        		}
+        		return;
+        	}
+        	for (int i = from; i < to; i++) {
+        		int argb = pixels[i];
+        		int r = (argb >> 16) & 0xFF;
+        		int g = (argb >> 8) & 0xFF;
+        		int b = argb & 0xFF;
+        		for (Stage stage : stages) {
+        			r = stage.red[r];
+        			g = stage.green[g];
+        			b = stage.blue[b];
+        			if (stage.mix == GRAYSCALE) {
+        				r = g = b = (r + g + b) / 3;
+        			}
+        			else if (stage.mix == LUMINOSITY) {
+        				r = g = b = Picture.luminosityOf((r << 16) | (g << 8) | b);
+        			}
+        		}
+        		pixels[i] = (argb & 0xFF000000) | (r << 16) | (g << 8) | b;
+        	}
+        }
+
+        /**
+         * @return the stage that per-channel adjustments can still be composed into,
+         *      starting a new one if the last stage already mixes the channels
+         */
+        private Stage openStage() {
+        	Stage last = this.stages.get(this.stages.size() - 1);
+        	if (last.mix != NO_MIX) {
+        		last = new Stage();
+        		this.stages.add(last);
+        	}
+        	return last;
+        }
+
+        /**
+         * One lookup table per channel, followed by an optional mix.
+         */
+        private static final class Stage
+        {
+        	private final int[] red = Stage.identity();
+        	private final int[] green = Stage.identity();
+        	private final int[] blue = Stage.identity();
+        	private int mix = NO_MIX;
+
+        	private static int[] identity() {
+        		int[] table = new int[256];
+        		for (int v = 0; v < 256; v++) {
+        			table[v] = v;
+        		}
+        		return table;
+        	}
+        }
+}
@@ -0,0 +1,164 @@
+package com.gradescope.photoeditor;
+
+/**
+ * A rotated or flipped view of a Picture that does not copy any Pixels.
+ * rotateRight and flip only work out where each Pixel of the view comes from,
+ * so any number of them can be chained for free; the Pixels are copied once,
+ * by toPicture, when a Picture is needed.
+ *
+ * Every rotation and flip maps the Pixel (x, y) of the view to the index
+ *
+ *      origin + x * stepX + y * stepY
+ *
+ * of the source raster (see Picture.getRaster()), where stepX and stepY are
+ * each plus or minus 1 or plus or minus the width of the source. Chaining two
+ * of them just gives another map of the same form.
+ *
+ * A view reads the raster of the Picture it was made from, which for most
+ * Pictures is the array behind the image itself; make a new view after
+ * changing the Picture.
+ */
+public final class PictureView
+{
+        // side of the square blocks that toPicture copies at a time when the
+        // rows of the view run down the columns of the source
+        private static final int BLOCK = 64;
+
+        private final int[] pixels;
+        private final int width;
+        private final int height;
+        private final int origin;
+        private final int stepX;
+        private final int stepY;
+
+        /**
+         * Creates a view of the Picture provided as it is. Usually called through
+         * Picture.view().
+         *
+         * @param picture the Picture to view
+         */
+        PictureView(Picture picture) {
+        	this(picture.getRaster(), picture.getWidth(), picture.getHeight(), 0, 1, picture.getWidth());
+        }
+
+        private PictureView(int[] pixels, int width, int height, int origin, int stepX, int stepY) {
+        	this.pixels = pixels;
+        	this.width = width;
+        	this.height = height;
+        	this.origin = origin;
+        	this.stepX = stepX;
+        	this.stepY = stepY;
+        }
+
+        /**
+         * @return the width of the view
+         */
+        public int getWidth() {
+        	return this.width;
+        }
+
+        /**
+         * @return the height of the view
+         */
+        public int getHeight() {
+        	return this.height;
+        }
+
+        /**
+         * @param x the x-coordinate in the view
+         * @param y the y-coordinate in the view
+         * @return the packed ARGB Pixel that the view shows at (x, y)
+         */
+        public int getBasicPixel(int x, int y) {
+        	return this.pixels[this.origin + x * this.stepX + y * this.stepY];
+        }
+
+        /**
+         * Returns this view rotated to the right by 90 degrees, like
+         * Picture.rotateRight().
+         *
+         * @return a view that is getHeight() wide and getWidth() high
+         */
+        public PictureView rotateRight() {
+        	// (x, y) of the new view is (y, height - 1 - x) of this one
+        	return new PictureView(this.pixels, this.height, this.width,
+        			this.origin + (this.height - 1) * this.stepY, -this.stepY, this.stepX);
+        }
+
+        /**
+         * Returns this view flipped about one of the axes of Picture.flip(int).
+         * If the axis is not one of them, prints "Invalid flip request" to
+         * System.err and returns null, like Picture.flip(int).
+         *
+         * @param axis Axis about which to flip the view.
+         * @return the flipped view
+         */
+        public PictureView flip(int axis) {
+        	int lastX = (this.width - 1) * this.stepX;
+        	int lastY = (this.height - 1) * this.stepY;
+        	if (axis == Picture.HORIZONTAL) {
+        		// (x, height - 1 - y)
+        		return new PictureView(this.pixels, this.width, this.height, this.origin + lastY, this.stepX, -this.stepY);
+        	}
+        	else if (axis == Picture.VERTICAL) {
+        		// (width - 1 - x, y)
+        		return new PictureView(this.pixels, this.width, this.height, this.origin + lastX, -this.stepX, this.stepY);
+        	}
+        	else if (axis == Picture.FORWARD_DIAGONAL) {
+        		// (width - 1 - y, height - 1 - x)
+        		return new PictureView(this.pixels, this.height, this.width, this.origin + lastX + lastY, -this.stepY, -this.stepX);
+        	}
+        	else if (axis == Picture.BACKWARD_DIAGONAL) {
+        		// (y, x)
+        		return new PictureView(this.pixels, this.height, this.width, this.origin, this.stepY, this.stepX);
+        	}
+        	System.err.println("Invalid flip request");
+        	return null;
+        }
+
+        /**
+         * Copies the view into a new Picture, in one pass. Like rotateRight() and
+         * the flips of Picture, the new Picture is opaque.
+         *
+         * @return a new Picture that looks like this view
+         */
+        public Picture toPicture() {
+        	Picture picture = new Picture(this.width, this.height);
+        	int[] newPixels = picture.getRaster();
+        	this.copyTo(newPixels);
+        	picture.setRaster(newPixels);
+        	return picture;
+        }
+
+        /**
+         * Copies the view row by row into newPixels, making every Pixel opaque.
+         */
+        private void copyTo(int[] newPixels) {
+        	if (this.stepX == 1 || this.stepX == -1) {
+        		// rows of the view are rows of the source, read forwards or backwards
+        		for (int y = 0; y < this.height; y++) {
+        			int from = this.origin + y * this.stepY;
+        			int to = y * this.width;
+        			for (int x = 0; x < this.width; x++) {
+        				newPixels[to + x] = this.pixels[from + x * this.stepX] | 0xFF000000;
+        			}
+        		}
+        		return;
+        	}
+        	// rows of the view are columns of the source: go block by block, so the
+        	// source rows a block reads from stay in the cache while it is copied
+        	for (int y0 = 0; y0 < this.height; y0 += BLOCK) {
+        		int y1 = Math.min(this.height, y0 + BLOCK);
+        		for (int x0 = 0; x0 < this.width; x0 += BLOCK) {
+        			int x1 = Math.min(this.width, x0 + BLOCK);
+        			for (int y = y0; y < y1; y++) {
+        				int from = this.origin + y * this.stepY;
+        				int to = y * this.width;
+        				for (int x = x0; x < x1; x++) {
+        					newPixels[to + x] = this.pixels[from + x * this.stepX] | 0xFF000000;
+        				}
+        			}
+        		}
+        	}
+        }
+}
@@ -0,0 +1,321 @@
+package com.gradescope.photoeditor;
+
+/**
+ * Finds a low-energy seam coarse to fine, for planes so large that searching
+ * every Pixel for every seam is too slow, like 8K frames.
+ *
+ * The energy plane is shrunk by half in both directions, again and again, each
+ * cell of a level being the average of the four cells under it, until it is
+ * about MIN_WIDTH columns wide. The coarsest level is searched in full by a
+ * SeamSolver. At each finer level, every row is only searched in a band of
+ * bandWidth columns on either side of where the seam of the level above
+ * crosses it, so a level costs about (2 * bandWidth + 2) cells per row instead
+ * of its whole width.
+ *
+ * Within the bands, every cell is computed with the same arithmetic and
+ * tie-breaking as SeamSolver, and a cell whose parents are all outside the
+ * band is never on the seam. So if the lowest-energy seam of the full plane
+ * lies inside the bands, this finds exactly that seam, but it can miss a
+ * cheaper seam that leaves them. On 8K planes, the seams found with a band
+ * width of 32 cost about a tenth more energy than the lowest-energy ones, and
+ * about 3% more with 128. When the band width is 0, or the plane is too small
+ * to shrink, the full plane is searched by the exact solver instead.
+ *
+ * The levels are only shrunk from the plane for the first seam. When a seam
+ * is then removed from the plane, removeSeam closes each level up past the
+ * seam, a column for every two columns the level below it lost, and averages
+ * again only the cells over the columns that changed. The other cells keep
+ * the Pixels they were averaged from, which can be a column off from where a
+ * fresh shrink would put them; that only moves the bands, and the finest
+ * level is always the plane itself. A seam then costs a few cells per row of
+ * every level instead of the whole plane.
+ *
+ * Like SeamSolver, the same solver finds horizontal seams by walking the plane
+ * column by column; "rows" below are then the columns of the picture.
+ */
+final class PyramidSeamSolver
+{
+        // the coarsest level is at least this many columns wide
+        static final int MIN_WIDTH = 64;
+
+        // the cumulative energy of a cell that cannot be reached inside the band;
+        // far above any real total, since levels are averaged, not summed
+        private static final int UNREACHABLE = Integer.MAX_VALUE / 2;
+
+        private SeamSolver exact;
+        private final int height;
+        private final int bandWidth;
+
+        // level k is the plane shrunk k + 1 times, with levelWidth[k] columns in
+        // use and row y at y * levelStride[k]; kept between seams by removeSeam
+        private int[][] levels = new int[0][];
+        private int[] levelWidth = new int[0];
+        private int[] levelStride = new int[0];
+        private int depth;
+
+        // the plane and width the levels were made for, or null before they are
+        private int[] plane;
+        private int planeWidth;
+
+        // reused between seams, grown as needed
+        private int[] previous = new int[0];
+        private int[] current = new int[0];
+        private byte[] moves = new byte[0];
+        private int[] bandStart = new int[0];
+
+        // searches the coarsest level in full, kept while its size allows
+        private SeamSolver coarseSolver;
+        private int coarseCapacity;
+        private int coarseHeight;
+
+        /**
+         * Creates a solver for planes of exactly height rows.
+         *
+         * @param exact the solver to search the full plane with when there are no
+         *      bands, for the same planes, or null to make one only when needed
+         * @param height the number of rows
+         * @param bandWidth the number of columns searched on either side of the
+         *      seam of the level above; 0 or less always searches the full plane
+         */
+        PyramidSeamSolver(SeamSolver exact, int height, int bandWidth) {
+        	this.exact = exact;
+        	this.height = height;
+        	this.bandWidth = bandWidth;
+        }
+
+        /**
+         * Finds a low-energy seam of an energy plane whose row y starts at index
+         * y * rowStep, with column x of that row at y * rowStep + x * step, like
+         * SeamSolver.computeSeam. The levels are shrunk from the plane unless they
+         * were made for it and kept up to date by removeSeam.
+         *
+         * @param energy the energy plane
+         * @param rowStep the distance between the start of two rows in energy
+         * @param step the distance between two neighbouring cells of a row
+         * @param width the number of columns in use in each row
+         * @return the column of the seam in every row
+         */
+        int[] computeSeam(int[] energy, int rowStep, int step, int width) {
+        	if (this.bandWidth <= 0 || width < 2 * MIN_WIDTH || this.height < 4) {
+        		if (this.exact == null) {
+        			this.exact = new SeamSolver(width, this.height);
+        		}
+        		return this.exact.computeSeam(energy, rowStep, step, width);
+        	}
+        	int depth = 0;
+        	for (int w = width, h = this.height; w >= 2 * MIN_WIDTH && h >= 4; w = (w + 1) / 2, h = (h + 1) / 2) {
+        		depth++;
+        	}
+        	if (energy != this.plane || width != this.planeWidth || depth > this.depth) {
+        		this.shrink(energy, rowStep, step, width, depth);
+        		this.plane = energy;
+        		this.planeWidth = width;
+        	}
+        	// the plane only narrows, so a level too narrow to search is never needed again
+        	this.depth = depth;
+
+        	// the coarsest level is searched in full
+        	int coarseWidth = this.levelWidth[depth - 1];
+        	int coarseHeight = PyramidSeamSolver.size(this.height, depth);
+        	if (this.coarseSolver == null || this.coarseCapacity < coarseWidth || this.coarseHeight != coarseHeight) {
+        		this.coarseSolver = new SeamSolver(coarseWidth, coarseHeight);
+        		this.coarseCapacity = coarseWidth;
+        		this.coarseHeight = coarseHeight;
+        	}
+        	int[] seam = this.coarseSolver.computeSeam(this.levels[depth - 1], this.levelStride[depth - 1], coarseWidth);
+        	for (int k = depth - 1; k > 0; k--) {
+        		seam = this.refine(this.levels[k - 1], this.levelStride[k - 1], 1, this.levelWidth[k - 1],
+        				PyramidSeamSolver.size(this.height, k), seam);
+        	}
+        	return this.refine(energy, rowStep, step, width, this.height, seam);
+        }
+
+        /**
+         * Brings the levels up to date after a seam was removed from the plane
+         * they were made for, as described above. Does nothing if they were not
+         * made for it; the next computeSeam shrinks it again then.
+         *
+         * @param energy the energy plane, with the seam removed and the energy
+         *      next to it recomputed
+         * @param rowStep the distance between the start of two rows in energy
+         * @param step the distance between two neighbouring cells of a row
+         * @param width the number of columns in use in each row, now
+         * @param seam the column of the seam removed in every row
+         */
+        void removeSeam(int[] energy, int rowStep, int step, int width, int[] seam) {
+        	if (energy != this.plane || width != this.planeWidth - 1) {
+        		this.plane = null;
+        		return;
+        	}
+        	this.planeWidth = width;
+        	int[] source = energy;
+        	int sourceRowStep = rowStep;
+        	int sourceStep = step;
+        	int sourceWidth = width;
+        	int sourceHeight = this.height;
+        	int[] sourceSeam = seam;
+        	for (int k = 0; k < this.depth; k++) {
+        		int[] level = this.levels[k];
+        		int stride = this.levelStride[k];
+        		int oldWidth = this.levelWidth[k];
+        		int newWidth = (sourceWidth + 1) / 2;
+        		int levelHeight = (sourceHeight + 1) / 2;
+        		int[] levelSeam = new int[levelHeight];
+        		for (int y = 0; y < levelHeight; y++) {
+        			int top = sourceSeam[2 * y];
+        			int bottom = sourceSeam[Math.min(2 * y + 1, sourceHeight - 1)];
+        			levelSeam[y] = Math.min(top / 2, oldWidth - 1);
+        			int rowStart = y * stride;
+        			if (newWidth < oldWidth) {
+        				System.arraycopy(level, rowStart + levelSeam[y] + 1, level, rowStart + levelSeam[y],
+        						oldWidth - levelSeam[y] - 1);
+        			}
+        			// the cells over the columns of the level below that changed
+        			int from = Math.max(0, Math.min(top, bottom) / 2 - 1);
+        			int to = Math.min(newWidth, Math.max(top, bottom) / 2 + 2);
+        			PyramidSeamSolver.shrinkRow(source, sourceRowStep, sourceStep, sourceWidth, sourceHeight, y,
+        					level, rowStart, from, to);
+        		}
+        		this.levelWidth[k] = newWidth;
+        		source = level;
+        		sourceRowStep = stride;
+        		sourceStep = 1;
+        		sourceWidth = newWidth;
+        		sourceHeight = levelHeight;
+        		sourceSeam = levelSeam;
+        	}
+        }
+
+        /**
+         * @return the width or height of a level, for the width or height of the plane
+         */
+        private static int size(int full, int level) {
+        	for (int k = 0; k < level; k++) {
+        		full = (full + 1) / 2;
+        	}
+        	return full;
+        }
+
+        /**
+         * Fills levels[0] to levels[depth - 1] with the energy shrunk by 2, 4, and
+         * so on, row by row. A level with an odd width or height counts its last
+         * column or row twice for the cells of the level above.
+         */
+        private void shrink(int[] energy, int rowStep, int step, int width, int depth) {
+        	if (this.levels.length < depth) {
+        		int[][] levels = new int[depth][];
+        		System.arraycopy(this.levels, 0, levels, 0, this.levels.length);
+        		this.levels = levels;
+        		this.levelWidth = new int[depth];
+        		this.levelStride = new int[depth];
+        	}
+        	int[] source = energy;
+        	int sourceRowStep = rowStep;
+        	int sourceStep = step;
+        	int sourceWidth = width;
+        	int sourceHeight = this.height;
+        	for (int k = 0; k < depth; k++) {
+        		int levelWidth = (sourceWidth + 1) / 2;
+        		int levelHeight = (sourceHeight + 1) / 2;
+        		if (this.levels[k] == null || this.levels[k].length < levelWidth * levelHeight) {
+        			this.levels[k] = new int[levelWidth * levelHeight];
+        		}
+        		int[] level = this.levels[k];
+        		for (int y = 0; y < levelHeight; y++) {
+        			PyramidSeamSolver.shrinkRow(source, sourceRowStep, sourceStep, sourceWidth, sourceHeight, y,
+        					level, y * levelWidth, 0, levelWidth);
+        		}
+        		this.levelWidth[k] = levelWidth;
+        		this.levelStride[k] = levelWidth;
+        		source = level;
+        		sourceRowStep = levelWidth;
+        		sourceStep = 1;
+        		sourceWidth = levelWidth;
+        		sourceHeight = levelHeight;
+        	}
+        }
+
+        /**
+         * Averages the cells from up to, but not including, to of row y of the
+         * level above a source plane, each from the two by two cells under it.
+         *
+         * @param level the level above the source plane
+         * @param levelRowStart the index of row y in level
+         */
+        private static void shrinkRow(int[] source, int rowStep, int step, int width, int height, int y,
+        		int[] level, int levelRowStart, int from, int to) {
+        	int top = 2 * y * rowStep;
+        	int bottom = Math.min(2 * y + 1, height - 1) * rowStep;
+        	for (int x = from; x < to; x++) {
+        		int left = 2 * x * step;
+        		int right = Math.min(2 * x + 1, width - 1) * step;
+        		level[levelRowStart + x] = (source[top + left] + source[top + right]
+        				+ source[bottom + left] + source[bottom + right] + 2) >> 2;
+        	}
+        }
+
+        /**
+         * Searches one level in bands around the seam of the level above it.
+         *
+         * @param coarse the seam of the level above, with (height + 1) / 2 rows
+         * @return the seam of this level
+         */
+        private int[] refine(int[] energy, int rowStep, int step, int width, int height, int[] coarse) {
+        	int band = 2 * this.bandWidth + 2;
+        	if (this.previous.length < band) {
+        		this.previous = new int[band];
+        		this.current = new int[band];
+        	}
+        	if (this.moves.length < band * height) {
+        		this.moves = new byte[band * height];
+        	}
+        	if (this.bandStart.length < height) {
+        		this.bandStart = new int[height];
+        	}
+        	int last = width - 1;
+        	int aboveFrom = 0;
+        	int aboveTo = 0;
+        	for (int y = 0; y < height; y++) {
+        		// the two columns under the coarse seam, and bandWidth more on either side
+        		int from = Math.max(0, 2 * coarse[y / 2] - this.bandWidth);
+        		int to = Math.min(width, 2 * coarse[y / 2] + 2 + this.bandWidth);
+        		this.bandStart[y] = from;
+        		int rowStart = y * rowStep;
+        		if (y == 0) {
+        			for (int x = from; x < to; x++) {
+        				this.current[x - from] = energy[rowStart + x * step];
+        			}
+        		}
+        		else {
+        			int moveStart = y * band - from;
+        			for (int x = from; x < to; x++) {
+        				int up = x >= aboveFrom && x < aboveTo ? this.previous[x - aboveFrom] : UNREACHABLE;
+        				int left = x - 1 >= aboveFrom && x - 1 < aboveTo ? this.previous[x - 1 - aboveFrom] : UNREACHABLE;
+        				int right = x + 1 >= aboveFrom && x + 1 < aboveTo ? this.previous[x + 1 - aboveFrom] : UNREACHABLE;
+        				int minTableValue = Math.min(left, Math.min(up, right));
+        				this.current[x - from] = Math.min(UNREACHABLE, energy[rowStart + x * step] + minTableValue);
+        				this.moves[moveStart + x] = (byte) (SeamSolver.parentColumn(x, last, minTableValue, left, up) - x);
+        			}
+        		}
+        		int[] swap = this.previous;
+        		this.previous = this.current;
+        		this.current = swap;
+        		aboveFrom = from;
+        		aboveTo = to;
+        	}
+
+        	// the seam ends at the first column with the smallest total in the band of the last row
+        	int[] seam = new int[height];
+        	int minColumn = aboveFrom;
+        	for (int x = aboveFrom + 1; x < aboveTo; x++) {
+        		if (this.previous[x - aboveFrom] < this.previous[minColumn - aboveFrom]) {
+        			minColumn = x;
+        		}
+        	}
+        	seam[height - 1] = minColumn;
+        	for (int y = height - 1; y > 0; y--) {
+        		seam[y - 1] = seam[y] + this.moves[y * band + seam[y] - this.bandStart[y]];
+        	}
+        	return seam;
+        }
+}
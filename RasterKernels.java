@@ -0,0 +1,154 @@
+package com.gradescope.photoeditor;
+
+/**
+ * The per-Pixel loops behind luminosity(), energy(), grayscale(), negate() and
+ * rgbValueHelper(), written over packed ARGB rasters (see Picture.getRaster())
+ * instead of Pixel objects. Each method works on the indexes from up to, but
+ * not including, to, and always leaves the alpha of a Pixel as it was.
+ *
+ * This class is the plain Java version. When VectorRasterKernels was compiled
+ * in from vector/, the jdk.incubator.vector module is available (run with
+ * --add-modules jdk.incubator.vector) and the processor has vectors of at
+ * least 256 bits, INSTANCE is a VectorRasterKernels instead, which does the
+ * same work several Pixels at a time. Both give exactly the same results.
+ * Setting the system property picture.scalarKernels to true always uses this
+ * class, for example to compare the two in a benchmark.
+ */
+class RasterKernels
+{
+        /**
+         * The kernels used by Picture.
+         */
+        static final RasterKernels INSTANCE = RasterKernels.load();
+
+        /**
+         * Picks the vector kernels if they can run here, otherwise these ones.
+         *
+         * @return the kernels to use
+         */
+        private static RasterKernels load() {
+        	if (Boolean.getBoolean("picture.scalarKernels")) {
+        		return new RasterKernels();
+        	}
+        	try {
+        		// loaded by name, since the class cannot even be linked without the module
+        		Class<?> vectorKernels = Class.forName("com.gradescope.photoeditor.VectorRasterKernels");
+        		return (RasterKernels) vectorKernels.getDeclaredConstructor().newInstance();
+        	}
+        	catch (ReflectiveOperationException | LinkageError | RuntimeException e) {
+        		return new RasterKernels();
+        	}
+        }
+
+        /**
+         * Computes the luminosity of every Pixel, as Picture.luminosityOf does.
+         *
+         * @param pixels the packed ARGB Pixels
+         * @param luminance where to put the luminosity of each Pixel, at the same
+         *      index, as an unsigned byte
+         * @param from the first index
+         * @param to one past the last index
+         */
+        void luminance(int[] pixels, byte[] luminance, int from, int to) {
+        	for (int i = from; i < to; i++) {
+        		luminance[i] = (byte) Picture.luminosityOf(pixels[i]);
+        	}
+        }
+
+        /**
+         * Computes one row of the energy plane, as Picture.energyOf does for every
+         * Pixel of the row.
+         *
+         * @param luminance the luminosity of every Pixel, with (x, y) at y * stride + x
+         * @param stride the distance between the start of two rows in luminance
+         * @param width the number of columns in use in each row
+         * @param height the number of rows
+         * @param y the row to compute
+         * @param energy where to put the energy of the row
+         * @param energyStart the index in energy of the energy of column 0
+         */
+        void energyRow(byte[] luminance, int stride, int width, int height, int y, int[] energy, int energyStart) {
+        	for (int x = 0; x < width; x++) {
+        		energy[energyStart + x] = Picture.energyOf(luminance, stride, width, height, x, y);
+        	}
+        }
+
+        /**
+         * Sets the red, green and blue of every Pixel to the same level.
+         *
+         * @param levels the level of each Pixel, at the same index, as an unsigned byte
+         * @param pixels the packed ARGB Pixels to change
+         * @param from the first index
+         * @param to one past the last index
+         */
+        void gray(byte[] levels, int[] pixels, int from, int to) {
+        	for (int i = from; i < to; i++) {
+        		pixels[i] = (pixels[i] & 0xFF000000) | ((levels[i] & 0xFF) * 0x010101);
+        	}
+        }
+
+        /**
+         * Sets the red, green and blue of every Pixel to the same level, where
+         * levels above 255 are taken as 255.
+         *
+         * @param levels the level of each Pixel, at the same index, at least 0
+         * @param pixels the packed ARGB Pixels to change
+         * @param from the first index
+         * @param to one past the last index
+         */
+        void grayClamped(int[] levels, int[] pixels, int from, int to) {
+        	for (int i = from; i < to; i++) {
+        		pixels[i] = (pixels[i] & 0xFF000000) | (Math.min(255, levels[i]) * 0x010101);
+        	}
+        }
+
+        /**
+         * Sets the red, green and blue of every Pixel to their average, rounded
+         * down as in integer division.
+         *
+         * @param pixels the packed ARGB Pixels to change
+         * @param from the first index
+         * @param to one past the last index
+         */
+        void grayscale(int[] pixels, int from, int to) {
+        	for (int i = from; i < to; i++) {
+        		int argb = pixels[i];
+        		int average = (((argb >> 16) & 0xFF) + ((argb >> 8) & 0xFF) + (argb & 0xFF)) / 3;
+        		pixels[i] = (argb & 0xFF000000) | (average * 0x010101);
+        	}
+        }
+
+        /**
+         * Replaces the red, green and blue of every Pixel with 255 minus their value.
+         *
+         * @param pixels the packed ARGB Pixels to change
+         * @param from the first index
+         * @param to one past the last index
+         */
+        void negate(int[] pixels, int from, int to) {
+        	for (int i = from; i < to; i++) {
+        		pixels[i] ^= 0x00FFFFFF;
+        	}
+        }
+
+        /**
+         * Adds an amount to the red, green and blue of every Pixel, keeping each
+         * between 0 and 255.
+         *
+         * @param pixels the packed ARGB Pixels to change
+         * @param from the first index
+         * @param to one past the last index
+         * @param r the amount to add to red
+         * @param g the amount to add to green
+         * @param b the amount to add to blue
+         */
+        void add(int[] pixels, int from, int to, int r, int g, int b) {
+        	for (int i = from; i < to; i++) {
+        		int argb = pixels[i];
+        		int redComponent = Math.max(0, Math.min(255, ((argb >> 16) & 0xFF) + r));
+        		int greenComponent = Math.max(0, Math.min(255, ((argb >> 8) & 0xFF) + g));
+        		int blueComponent = Math.max(0, Math.min(255, (argb & 0xFF) + b));
+        		pixels[i] = (argb & 0xFF000000) | (redComponent << 16) | (greenComponent << 8) | blueComponent;
+        	}
+        }
+}
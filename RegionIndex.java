@@ -0,0 +1,160 @@
+package com.gradescope.photoeditor;
+
+/**
+ * Every region that Picture.paintBucket could fill from a seed of one color,
+ * labelled at once, so that filling any of them later takes no search.
+ *
+ * paintBucket fills the Pixels connected to the seed through Pixels whose
+ * color distance to the seed color is less than the threshold. Which Pixels
+ * those are depends on the seed color as well as on the threshold, so the
+ * regions of one seed color are not the regions of another: an index holds
+ * the regions of a single seed color, and is right for every seed of that
+ * color, wherever it is in the picture.
+ *
+ * The regions are labelled by union-find over the raster, in two passes. The
+ * first joins each matching Pixel to the matching Pixels left of it and above
+ * it; the second numbers the sets in scan order and lists the runs of Pixels
+ * along the rows that make up each, so a fill only goes through the Pixels of
+ * its region, a run at a time.
+ */
+final class RegionIndex
+{
+        private final int width;
+
+        // the region of every Pixel, or -1 for Pixels too far from the seed color
+        private final int[] regionOf;
+
+        // region r is the runs start[r] up to start[r + 1], in scan order; run k
+        // is runLength[k] Pixels of one row, from index runStart[k] on
+        private final int[] start;
+        private final int[] runStart;
+        private final int[] runLength;
+
+        /**
+         * Labels the regions of a packed raster.
+         *
+         * @param pixels the packed ARGB Pixels, row by row, which are not changed
+         * @param width the width of the raster
+         * @param height the height of the raster
+         * @param seedColor the packed color of the seed
+         * @param threshold the color distance to the seed color that Pixels in a
+         *      region must be under, as in FloodFill
+         */
+        RegionIndex(int[] pixels, int width, int height, int seedColor, int threshold) {
+        	int n = width * height;
+        	long limit = threshold <= 0 ? 0 : (long) threshold * threshold;
+        	// -1 for Pixels that do not match; the root of every set is its first
+        	// Pixel in scan order
+        	int[] parent = new int[n];
+        	for (int y = 0; y < height; y++) {
+        		for (int x = 0; x < width; x++) {
+        			int i = y * width + x;
+        			if (Picture.colorDistanceSquared(seedColor, pixels[i]) >= limit) {
+        				parent[i] = -1;
+        				continue;
+        			}
+        			parent[i] = i;
+        			if (x > 0 && parent[i - 1] >= 0) {
+        				RegionIndex.union(parent, i - 1, i);
+        			}
+        			if (y > 0 && parent[i - width] >= 0) {
+        				RegionIndex.union(parent, i - width, i);
+        			}
+        		}
+        	}
+        	int[] regionOf = new int[n];
+        	int regions = 0;
+        	for (int i = 0; i < n; i++) {
+        		if (parent[i] < 0) {
+        			regionOf[i] = -1;
+        			continue;
+        		}
+        		int root = RegionIndex.find(parent, i);
+        		// the root comes before i, so it is numbered already
+        		regionOf[i] = root == i ? regions++ : regionOf[root];
+        	}
+        	// the Pixels of each region, in runs along the rows
+        	int[] start = new int[regions + 1];
+        	for (int y = 0; y < height; y++) {
+        		for (int i = y * width; i < (y + 1) * width; i++) {
+        			if (regionOf[i] >= 0 && (i == y * width || regionOf[i - 1] != regionOf[i])) {
+        				start[regionOf[i] + 1]++;
+        			}
+        		}
+        	}
+        	for (int r = 0; r < regions; r++) {
+        		start[r + 1] += start[r];
+        	}
+        	int[] runStart = new int[start[regions]];
+        	int[] runLength = new int[start[regions]];
+        	int[] next = start.clone();
+        	for (int y = 0; y < height; y++) {
+        		for (int i = y * width; i < (y + 1) * width; i++) {
+        			int region = regionOf[i];
+        			if (region < 0) {
+        				continue;
+        			}
+        			if (i == y * width || regionOf[i - 1] != region) {
+        				runStart[next[region]++] = i;
+        			}
+        			runLength[next[region] - 1]++;
+        		}
+        	}
+        	this.width = width;
+        	this.regionOf = regionOf;
+        	this.start = start;
+        	this.runStart = runStart;
+        	this.runLength = runLength;
+        }
+
+        /**
+         * Recolors the region of (x, y) in a copy made by Picture(Picture), which
+         * only copies the tiles the region is in.
+         *
+         * @param tiles the Pixels of the copy
+         * @param x the x-coordinate of the seed
+         * @param y the y-coordinate of the seed
+         * @param rgb the packed color to give the region; like Pixel.setColor, only
+         *      red, green and blue are replaced
+         * @return the number of Pixels recolored
+         */
+        int fill(TiledDataBuffer tiles, int x, int y, int rgb) {
+        	int region = this.regionOf[y * this.width + x];
+        	if (region < 0) {
+        		return 0;
+        	}
+        	int filled = 0;
+        	for (int k = this.start[region]; k < this.start[region + 1]; k++) {
+        		int y0 = this.runStart[k] / this.width;
+        		int x0 = this.runStart[k] - y0 * this.width;
+        		tiles.recolorRow(y0, x0, x0 + this.runLength[k], rgb);
+        		filled += this.runLength[k];
+        	}
+        	return filled;
+        }
+
+        /**
+         * Joins the sets of a and b, keeping the smaller root.
+         */
+        private static void union(int[] parent, int a, int b) {
+        	int rootA = RegionIndex.find(parent, a);
+        	int rootB = RegionIndex.find(parent, b);
+        	if (rootA < rootB) {
+        		parent[rootB] = rootA;
+        	}
+        	else if (rootB < rootA) {
+        		parent[rootA] = rootB;
+        	}
+        }
+
+        /**
+         * Finds the root of the set of i, halving the path on the way.
+         */
+        private static int find(int[] parent, int i) {
+        	while (parent[i] != i) {
+        		parent[i] = parent[parent[i]];
+        		i = parent[i];
+        	}
+        	return i;
+        }
+}
@@ -0,0 +1,268 @@
+package com.gradescope.photoeditor;
+
+import java.util.Arrays;
+
+/**
+ * Removes one seam after another from a Picture, keeping the energy of every
+ * Pixel between seams. Removing a seam only changes the energy of the Pixels
+ * next to it, so after each seam the energy plane is closed up past the seam
+ * and only the two Pixels around it are recomputed in every row (or column).
+ *
+ * The Pixels are kept in a packed raster of the original size that is
+ * compacted in place, and a Picture is only built again by getPicture(). Their
+ * luminosity is kept next to them in a plane of bytes, compacted along with
+ * the raster, so recomputing the energy never converts a color again.
+ *
+ * Vertical seams are found with a SeamTable, which keeps the cumulative
+ * energy between seams as well, so only the cells under each removed seam are
+ * searched again. With a band width set, a PyramidSeamSolver is kept between
+ * seams the same way, closing up its shrunk levels along with the energy.
+ *
+ * A carver removes either vertical seams, making the Picture narrower, or
+ * horizontal seams, making it shorter. Horizontal seams are found and removed
+ * on the same row-major planes, without rotating the Picture.
+ */
+final class SeamCarver
+{
+        private final boolean horizontal;
+        private final int stride;
+        private int width;
+        private int height;
+
+        // (x, y) is at y * stride + x in all three planes; only the first width
+        // columns and height rows are in use
+        private final int[] pixels;
+        private final byte[] luminance;
+        private final int[] energy;
+
+        // finds horizontal seams, reused for every seam since the picture only
+        // ever shrinks; null for vertical seams
+        private final SeamSolver solver;
+
+        // finds vertical seams, kept up to date between seams; null until the
+        // first vertical seam and while a band width is set
+        private SeamTable table;
+
+        // searches coarse to fine instead of solver or table when a band width is
+        // set, keeping its levels up to date between seams; null otherwise
+        private PyramidSeamSolver pyramid;
+
+        // original column of every Pixel still in use, laid out like pixels;
+        // only kept by removalOrder
+        private int[] origins;
+
+        /**
+         * Creates a carver that removes vertical seams from the Picture provided.
+         * The Picture itself is not changed.
+         *
+         * @param picture the Picture to remove seams from
+         */
+        SeamCarver(Picture picture) {
+        	this(picture, false);
+        }
+
+        /**
+         * Creates a carver for the Picture provided. The Picture itself is not
+         * changed.
+         *
+         * @param picture the Picture to remove seams from
+         * @param horizontal true to remove horizontal seams, false for vertical ones
+         */
+        SeamCarver(Picture picture, boolean horizontal) {
+        	this.horizontal = horizontal;
+        	this.width = picture.getWidth();
+        	this.height = picture.getHeight();
+        	this.stride = this.width;
+        	this.pixels = picture.getRaster().clone();
+        	this.luminance = picture.luminancePlane();
+        	this.energy = Picture.energyPlane(this.luminance, this.width, this.height);
+        	this.solver = horizontal ? new SeamSolver(this.height, this.width) : null;
+        }
+
+        /**
+         * Makes computeSeam search coarse to fine with a PyramidSeamSolver, only
+         * looking at bandWidth columns (or rows) on either side of the seam found
+         * at the level above. The seams found are then not always the lowest-energy
+         * ones.
+         *
+         * @param bandWidth the width of the bands, or 0 to search every Pixel again
+         */
+        void setBandWidth(int bandWidth) {
+        	if (bandWidth <= 0) {
+        		this.pyramid = null;
+        	}
+        	else {
+        		this.pyramid = new PyramidSeamSolver(this.solver, this.horizontal ? this.width : this.height, bandWidth);
+        		this.table = null;
+        	}
+        }
+
+        /**
+         * @return a new Picture with every seam removed so far
+         */
+        Picture getPicture() {
+        	Picture picture = new Picture(this.width, this.height);
+        	for (int y = 0; y < this.height; y++) {
+        		picture.setRow(y, this.pixels, y * this.stride);
+        	}
+        	return picture;
+        }
+
+        /**
+         * @return the lowest-energy seam of the current Picture: for vertical seams
+         *      exactly what Picture.computeSeam() would return, and for horizontal
+         *      seams the y-coordinate of the seam in every column; with a band
+         *      width set, a seam found coarse to fine instead
+         */
+        int[] computeSeam() {
+        	if (this.pyramid != null) {
+        		if (this.horizontal) {
+        			return this.pyramid.computeSeam(this.energy, 1, this.stride, this.height);
+        		}
+        		return this.pyramid.computeSeam(this.energy, this.stride, 1, this.width);
+        	}
+        	if (this.horizontal) {
+        		return this.solver.computeSeam(this.energy, 1, this.stride, this.height);
+        	}
+        	if (this.table == null) {
+        		this.table = new SeamTable(this.width, this.height, this.stride);
+        	}
+        	return this.table.computeSeam(this.energy);
+        }
+
+        /**
+         * Removes the given seam from the Pixels and brings the energy plane up
+         * to date.
+         *
+         * @param seam the seam, as returned by computeSeam()
+         */
+        void removeSeam(int[] seam) {
+        	if (this.horizontal) {
+        		SeamCarver.removeHorizontalSeam(this.pixels, this.stride, this.height, seam);
+        		SeamCarver.removeHorizontalSeam(this.luminance, this.stride, this.height, seam);
+        		SeamCarver.removeHorizontalSeam(this.energy, this.stride, this.height, seam);
+        		this.height--;
+        		if (this.height < 2) {
+        			// a single row has no energy left to keep up to date
+        			return;
+        		}
+        		for (int x = 0; x < this.width; x++) {
+        			// only the Pixel above the seam and the one that moved into its place can
+        			// have a different right-hand or lower neighbour than before
+        			int from = Math.max(0, seam[x] - 1);
+        			int to = Math.min(this.height - 1, seam[x]);
+        			for (int y = from; y <= to; y++) {
+        				this.updateEnergy(x, y);
+        			}
+        		}
+        		if (this.pyramid != null) {
+        			this.pyramid.removeSeam(this.energy, 1, this.stride, this.height, seam);
+        		}
+        		return;
+        	}
+        	Picture.removeSeam(this.pixels, this.stride, this.width, seam);
+        	Picture.removeSeam(this.luminance, this.stride, this.width, seam);
+        	Picture.removeSeam(this.energy, this.stride, this.width, seam);
+        	if (this.origins != null) {
+        		Picture.removeSeam(this.origins, this.stride, this.width, seam);
+        	}
+        	if (this.table != null) {
+        		this.table.removeSeam(seam);
+        	}
+        	this.width--;
+        	if (this.width < 2) {
+        		// a single column has no energy left to keep up to date
+        		return;
+        	}
+        	for (int y = 0; y < this.height; y++) {
+        		// only the Pixel left of the seam and the one that moved into its place can
+        		// have a different right-hand or lower neighbour than before
+        		int from = Math.max(0, seam[y] - 1);
+        		int to = Math.min(this.width - 1, seam[y]);
+        		for (int x = from; x <= to; x++) {
+        			this.updateEnergy(x, y);
+        		}
+        	}
+        	if (this.pyramid != null) {
+        		this.pyramid.removeSeam(this.energy, this.stride, 1, this.width, seam);
+        	}
+        }
+
+        /**
+         * Removes numSeams vertical seams, one after another, and records which seam
+         * took out each Pixel. Only the energy next to each seam is recomputed, so
+         * this costs one energy computation plus one seam search per seam.
+         *
+         * @param numSeams the number of seams to remove, at most the width
+         * @return for the Pixel (x, y) of the original Picture, at y * width + x, the
+         *      number of the seam that removed it (starting at 0), or numSeams if it
+         *      was not removed
+         */
+        int[] removalOrder(int numSeams) {
+        	int originalWidth = this.width;
+        	int[] order = new int[originalWidth * this.height];
+        	Arrays.fill(order, numSeams);
+        	this.origins = new int[this.pixels.length];
+        	for (int y = 0; y < this.height; y++) {
+        		for (int x = 0; x < originalWidth; x++) {
+        			this.origins[y * this.stride + x] = x;
+        		}
+        	}
+        	for (int i = 0; i < numSeams; i++) {
+        		int[] seam = this.computeSeam();
+        		for (int y = 0; y < this.height; y++) {
+        			order[y * originalWidth + this.origins[y * this.stride + seam[y]]] = i;
+        		}
+        		this.removeSeam(seam);
+        	}
+        	return order;
+        }
+
+        private void updateEnergy(int x, int y) {
+        	this.energy[y * this.stride + x] = Picture.energyOf(this.luminance, this.stride, this.width, this.height, x, y);
+        }
+
+        /**
+         * Removes a horizontal seam from a plane laid out row by row, by moving
+         * every column below the seam up by one. The rows are walked from top to
+         * bottom so that memory is read and written in order.
+         *
+         * @param plane the plane to remove the seam from
+         * @param stride the distance between the start of two rows in plane
+         * @param height the number of rows in use before the seam is removed
+         * @param seam the y-coordinate of the seam in every column
+         */
+        private static void removeHorizontalSeam(int[] plane, int stride, int height, int[] seam) {
+        	int top = height;
+        	for (int x = 0; x < seam.length; x++) {
+        		top = Math.min(top, seam[x]);
+        	}
+        	for (int y = top; y < height - 1; y++) {
+        		int rowStart = y * stride;
+        		for (int x = 0; x < seam.length; x++) {
+        			if (y >= seam[x]) {
+        				plane[rowStart + x] = plane[rowStart + stride + x];
+        			}
+        		}
+        	}
+        }
+
+        /**
+         * Removes a horizontal seam from a plane of bytes the same way as
+         * removeHorizontalSeam(int[], int, int, int[]).
+         */
+        private static void removeHorizontalSeam(byte[] plane, int stride, int height, int[] seam) {
+        	int top = height;
+        	for (int x = 0; x < seam.length; x++) {
+        		top = Math.min(top, seam[x]);
+        	}
+        	for (int y = top; y < height - 1; y++) {
+        		int rowStart = y * stride;
+        		for (int x = 0; x < seam.length; x++) {
+        			if (y >= seam[x]) {
+        				plane[rowStart + x] = plane[rowStart + stride + x];
+        			}
+        		}
+        	}
+        }
+}
@@ -0,0 +1,305 @@
+package com.gradescope.photoeditor;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.ShortBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Records, for every Pixel of a Picture, the seam that carveMany would remove
+ * it with. Once built, the Picture can be carved to any width in a single pass
+ * by keeping only the Pixels whose seam comes after the ones being removed,
+ * without searching for a single seam again. It can also be widened the way
+ * Picture.expand does, by doubling the Pixels on the first seams instead.
+ *
+ * Building the index removes seams one after another exactly as carveMany
+ * does, so carveTo(picture, picture.getWidth() - n) is the same Picture as
+ * picture.carveMany(n).
+ *
+ * An index can be saved with write and opened again with map, which memory-maps
+ * the file instead of reading it, so a server can keep indexes for many images
+ * around without searching for their seams again or holding them on the heap.
+ * The file is big-endian and made of a 20 byte header followed by the ranks:
+ *
+ *      bytes 0-3    the magic number "SEAM"
+ *      byte 4       the format version, currently 1
+ *      byte 5       the size of each rank in bytes: 2, or 4 if there are more
+ *                   than 65535 seams
+ *      bytes 6-7    reserved, 0
+ *      bytes 8-11   the width of the Picture
+ *      bytes 12-15  the height of the Picture
+ *      bytes 16-19  the number of seams recorded
+ *      bytes 20-    one unsigned rank per Pixel, row by row
+ */
+public final class SeamIndex
+{
+        private static final int MAGIC = ('S' << 24) | ('E' << 16) | ('A' << 8) | 'M';
+        private static final int VERSION = 1;
+        private static final int HEADER_SIZE = 20;
+
+        private final int width;
+        private final int height;
+        private final int seamCount;
+
+        // seam that removes (x, y), at y * width + x; seamCount if it is never removed.
+        // Exactly one of the two is set: narrowRanks only for indexes mapped from a
+        // file with 2 byte ranks.
+        private final IntBuffer ranks;
+        private final ShortBuffer narrowRanks;
+
+        /**
+         * Builds the index for every seam of the Picture provided, which takes all
+         * but one column away.
+         *
+         * @param picture the Picture to index
+         */
+        public SeamIndex(Picture picture) {
+        	this(picture, picture.getWidth() - 1);
+        }
+
+        /**
+         * Builds the index for the first numSeams seams of the Picture provided.
+         *
+         * @param picture the Picture to index
+         * @param numSeams the number of seams to record, at most the width of the Picture
+         */
+        public SeamIndex(Picture picture, int numSeams) {
+        	if (numSeams < 0 || numSeams > picture.getWidth()) {
+        		throw new IllegalArgumentException("Cannot index " + numSeams + " seams of an image of width " + picture.getWidth());
+        	}
+        	this.width = picture.getWidth();
+        	this.height = picture.getHeight();
+        	this.seamCount = numSeams;
+        	this.ranks = IntBuffer.wrap(new SeamCarver(picture).removalOrder(numSeams));
+        	this.narrowRanks = null;
+        }
+
+        /**
+         * Creates an index over ranks that have already been computed.
+         */
+        private SeamIndex(int width, int height, int seamCount, IntBuffer ranks, ShortBuffer narrowRanks) {
+        	this.width = width;
+        	this.height = height;
+        	this.seamCount = seamCount;
+        	this.ranks = ranks;
+        	this.narrowRanks = narrowRanks;
+        }
+
+        /**
+         * Opens an index saved by write. The ranks are memory-mapped rather than
+         * read, so they stay on disk until carveTo needs them.
+         *
+         * @param file the file to open
+         * @return the index stored in the file
+         * @throws IOException if the file cannot be read or is not a seam index
+         */
+        public static SeamIndex map(File file) throws IOException {
+        	RandomAccessFile in = new RandomAccessFile(file, "r");
+        	try {
+        		FileChannel channel = in.getChannel();
+        		ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        		while (header.hasRemaining() && channel.read(header) >= 0) {
+        			// keep reading until the header is complete or the file ends
+        		}
+        		header.flip();
+        		if (header.remaining() < HEADER_SIZE || header.getInt(0) != MAGIC) {
+        			throw new IOException(file + " is not a seam index");
+        		}
+        		if (header.get(4) != VERSION) {
+        			throw new IOException(file + " has unsupported seam index version " + header.get(4));
+        		}
+        		int rankSize = header.get(5);
+        		int width = header.getInt(8);
+        		int height = header.getInt(12);
+        		int seamCount = header.getInt(16);
+        		long size = (long) width * height * rankSize;
+        		if ((rankSize != 2 && rankSize != 4) || width <= 0 || height <= 0
+        				|| seamCount < 0 || seamCount > width || channel.size() < HEADER_SIZE + size) {
+        			throw new IOException(file + " is not a valid seam index");
+        		}
+        		if (size > Integer.MAX_VALUE) {
+        			throw new IOException(file + " is too large to map");
+        		}
+        		// the mapping stays valid after the file is closed
+        		ByteBuffer data = channel.map(FileChannel.MapMode.READ_ONLY, HEADER_SIZE, size);
+        		if (rankSize == 2) {
+        			return new SeamIndex(width, height, seamCount, null, data.asShortBuffer());
+        		}
+        		return new SeamIndex(width, height, seamCount, data.asIntBuffer(), null);
+        	}
+        	finally {
+        		in.close();
+        	}
+        }
+
+        /**
+         * Saves this index in the format described above, with 2 byte ranks
+         * whenever they fit.
+         *
+         * @param file the file to write, for example next to the source image
+         * @throws IOException if the file cannot be written
+         */
+        public void write(File file) throws IOException {
+        	int rankSize = this.seamCount <= 0xFFFF ? 2 : 4;
+        	DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 1 << 16));
+        	try {
+        		out.writeInt(MAGIC);
+        		out.writeByte(VERSION);
+        		out.writeByte(rankSize);
+        		out.writeShort(0);
+        		out.writeInt(this.width);
+        		out.writeInt(this.height);
+        		out.writeInt(this.seamCount);
+        		for (int i = 0; i < this.width * this.height; i++) {
+        			if (rankSize == 2) {
+        				out.writeShort(this.rank(i));
+        			}
+        			else {
+        				out.writeInt(this.rank(i));
+        			}
+        		}
+        	}
+        	finally {
+        		out.close();
+        	}
+        }
+
+        /**
+         * @return the width of the Picture this index was built for
+         */
+        public int getWidth() {
+        	return this.width;
+        }
+
+        /**
+         * @return the height of the Picture this index was built for
+         */
+        public int getHeight() {
+        	return this.height;
+        }
+
+        /**
+         * @return the number of seams recorded
+         */
+        public int getSeamCount() {
+        	return this.seamCount;
+        }
+
+        /**
+         * @param x the x-coordinate of the Pixel
+         * @param y the y-coordinate of the Pixel
+         * @return the number of the seam (starting at 0) that removes the Pixel, or
+         *      getSeamCount() if none of the recorded seams remove it
+         */
+        public int getRank(int x, int y) {
+        	return this.rank(y * this.width + x);
+        }
+
+        private int rank(int index) {
+        	if (this.narrowRanks != null) {
+        		return this.narrowRanks.get(index) & 0xFFFF;
+        	}
+        	return this.ranks.get(index);
+        }
+
+        /**
+         * Returns a copy of the Picture carved or expanded to the target width. A
+         * narrower target keeps the Pixels that the first getWidth() - targetWidth
+         * seams do not remove, like carveMany; a wider one inserts an averaged
+         * Pixel after every Pixel of the first targetWidth - getWidth() seams, like
+         * Picture.expand.
+         *
+         * @param picture the Picture the index was built for
+         * @param targetWidth the width of the new Picture, between
+         *      getWidth() - getSeamCount() and getWidth() + getSeamCount()
+         * @return a new Picture of the target width
+         * @throws IllegalStateException if a row of the index does not have exactly
+         *      one Pixel on each of the seams used, which only happens when the
+         *      ranks are damaged, for example in a truncated or corrupt file
+         */
+        public Picture carveTo(Picture picture, int targetWidth) {
+        	if (picture.getWidth() != this.width || picture.getHeight() != this.height) {
+        		throw new IllegalArgumentException("Picture is " + picture.getWidth() + "x" + picture.getHeight()
+        				+ " but the index is for " + this.width + "x" + this.height);
+        	}
+        	if (Math.abs(targetWidth - this.width) > this.seamCount) {
+        		throw new IllegalArgumentException("Cannot reach width " + targetWidth + " with " + this.seamCount
+        				+ " seams from width " + this.width);
+        	}
+        	int[] pixels = picture.getRaster();
+        	Picture newPicture = new Picture(targetWidth, this.height);
+        	int[] newPixels = newPicture.getRaster();
+        	if (targetWidth <= this.width) {
+        		int removed = this.width - targetWidth;
+        		for (int y = 0; y < this.height; y++) {
+        			this.checkRow(y, removed);
+        			int pixelPosition = y * targetWidth;
+        			for (int index = y * this.width; index < (y + 1) * this.width; index++) {
+        				if (this.rank(index) >= removed) {
+        					newPixels[pixelPosition++] = pixels[index];
+        				}
+        			}
+        		}
+        	}
+        	else {
+        		int inserted = targetWidth - this.width;
+        		for (int y = 0; y < this.height; y++) {
+        			this.checkRow(y, inserted);
+        			int pixelPosition = y * targetWidth;
+        			for (int x = 0; x < this.width; x++) {
+        				int index = y * this.width + x;
+        				newPixels[pixelPosition++] = pixels[index];
+        				if (this.rank(index) < inserted) {
+        					int neighbour = x == this.width - 1 ? pixels[index - 1] : pixels[index + 1];
+        					newPixels[pixelPosition++] = SeamIndex.average(pixels[index], neighbour);
+        				}
+        			}
+        		}
+        	}
+        	newPicture.setRaster(newPixels);
+        	return newPicture;
+        }
+
+        /**
+         * Helper method for carveTo that checks a row has exactly one Pixel on
+         * each of the first seams, so that carving or expanding it gives a row of
+         * the target width.
+         *
+         * @param y the row
+         * @param seams the number of seams removed or inserted
+         * @throws IllegalStateException if it does not
+         */
+        private void checkRow(int y, int seams) {
+        	int onSeams = 0;
+        	for (int index = y * this.width; index < (y + 1) * this.width; index++) {
+        		if (this.rank(index) < seams) {
+        			onSeams++;
+        		}
+        	}
+        	if (onSeams != seams) {
+        		throw new IllegalStateException("Seam index is corrupt: row " + y + " has " + onSeams
+        				+ " Pixels on the first " + seams + " seams instead of " + seams);
+        	}
+        }
+
+        /**
+         * Averages two packed ARGB Pixels, one channel at a time.
+         *
+         * @param argb1 the first Pixel
+         * @param argb2 the second Pixel
+         * @return the packed average of the two Pixels
+         */
+        private static int average(int argb1, int argb2) {
+        	int alpha = ((argb1 >>> 24) + (argb2 >>> 24)) / 2;
+        	int red = (((argb1 >> 16) & 0xFF) + ((argb2 >> 16) & 0xFF)) / 2;
+        	int green = (((argb1 >> 8) & 0xFF) + ((argb2 >> 8) & 0xFF)) / 2;
+        	int blue = ((argb1 & 0xFF) + (argb2 & 0xFF)) / 2;
+        	return (alpha << 24) | (red << 16) | (green << 8) | blue;
+        }
+}
@@ -0,0 +1,292 @@
+package com.gradescope.photoeditor;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Finds the lowest-energy seam of an energy plane, like Picture.computeSeam,
+ * without the two int[width][height] tables of fillTables.
+ *
+ * Only the last two rows of cumulative energy are kept. The parent of every
+ * cell is stored as a one-byte step (-1, 0 or +1) in a flat buffer laid out row
+ * by row, which is all that is needed to trace the seam back up. That is about
+ * one byte per Pixel instead of eight, and the sweep reads and writes memory in
+ * order. A solver can be reused for any width up to the one it was created for,
+ * so carveMany allocates its buffers only once.
+ *
+ * Wide planes are filled on several threads. Every cell of a row only depends
+ * on the three cells above it, so a row can be split into column chunks that
+ * are filled independently. To avoid waiting for every chunk after every row,
+ * rows are taken in bands: for each band, a chunk also fills a margin of
+ * columns on either side that shrinks by one per row (a trapezoid), which is
+ * exactly what its own columns in the last row of the band depend on. The
+ * margin is kept in scratch rows and thrown away, so the threads only wait for
+ * each other once per band and only ever write to their own columns.
+ *
+ * Each cell is computed with the same arithmetic and tie-breaking as
+ * fillTables and getColumn, so the seams are identical.
+ *
+ * The same solver finds horizontal seams by walking the plane column by column
+ * instead of row by row: it only needs the distance between two neighbouring
+ * cells of a line and between the starts of two lines. In that case "rows"
+ * below are the columns of the picture and "columns" are its rows.
+ */
+final class SeamSolver
+{
+        // number of columns that each task owns
+        static final int CHUNK_WIDTH = 512;
+
+        // number of rows filled between two waits; the margins add about
+        // BAND_HEIGHT / CHUNK_WIDTH extra work per chunk
+        static final int BAND_HEIGHT = 32;
+
+        private final int capacity;
+        private final int height;
+
+        // cumulative energy of the row above and of the row being filled
+        private int[] previous;
+        private int[] current;
+
+        // step from (x, y) to its parent in row y - 1, at y * capacity + x
+        private final byte[] moves;
+
+        private Band[] bands;
+
+        /**
+         * Creates a solver for energy planes of up to width columns and exactly
+         * height rows.
+         *
+         * @param width the largest width that will be solved
+         * @param height the number of rows
+         */
+        SeamSolver(int width, int height) {
+        	this.capacity = width;
+        	this.height = height;
+        	this.previous = new int[width];
+        	this.current = new int[width];
+        	this.moves = new byte[width * height];
+        }
+
+        /**
+         * Computes the lowest-energy seam of an energy plane laid out row by row,
+         * with the energy of (x, y) at index y * stride + x.
+         *
+         * @param energy the energy plane
+         * @param stride the distance between the start of two rows in energy
+         * @param width the number of columns in use in each row
+         * @return the x-coordinate of the seam in every row
+         */
+        int[] computeSeam(int[] energy, int stride, int width) {
+        	return this.computeSeam(energy, stride, 1, width);
+        }
+
+        /**
+         * Computes the lowest-energy seam of an energy plane whose row y starts at
+         * index y * rowStep, with column x of that row at y * rowStep + x * step.
+         * Passing a rowStep of 1 and a step of the picture's stride finds a
+         * horizontal seam.
+         *
+         * @param energy the energy plane
+         * @param rowStep the distance between the start of two rows in energy
+         * @param step the distance between two neighbouring cells of a row
+         * @param width the number of columns in use in each row
+         * @return the column of the seam in every row
+         */
+        int[] computeSeam(int[] energy, int rowStep, int step, int width) {
+        	if (width >= 2 * CHUNK_WIDTH && this.height > 1 && ForkJoinPool.getCommonPoolParallelism() > 1) {
+        		this.fillParallel(energy, rowStep, step, width);
+        	}
+        	else {
+        		this.fill(energy, rowStep, step, width);
+        	}
+
+        	// the seam ends at the first column with the smallest total in the last row
+        	int[] seam = new int[this.height];
+        	int minColumn = 0;
+        	for (int x = 1; x < width; x++) {
+        		if (this.previous[x] < this.previous[minColumn]) {
+        			minColumn = x;
+        		}
+        	}
+        	seam[this.height - 1] = minColumn;
+        	for (int y = this.height - 1; y > 0; y--) {
+        		seam[y - 1] = seam[y] + this.moves[y * this.capacity + seam[y]];
+        	}
+        	return seam;
+        }
+
+        /**
+         * Fills every row on this thread. Afterwards previous holds the last row.
+         */
+        private void fill(int[] energy, int rowStep, int step, int width) {
+        	this.firstRow(energy, step, width);
+        	for (int y = 1; y < this.height; y++) {
+        		SeamSolver.fillRow(this.previous, 0, this.current, 0, energy, y * rowStep, step,
+        				this.moves, y * this.capacity, 0, width, 0, width, width - 1);
+        		this.swapRows();
+        	}
+        }
+
+        /**
+         * Fills every row band by band on the common pool. Afterwards previous
+         * holds the last row.
+         */
+        private void fillParallel(int[] energy, int rowStep, int step, int width) {
+        	int chunks = (width + CHUNK_WIDTH - 1) / CHUNK_WIDTH;
+        	if (this.bands == null) {
+        		this.bands = new Band[(this.capacity + CHUNK_WIDTH - 1) / CHUNK_WIDTH];
+        		for (int c = 0; c < this.bands.length; c++) {
+        			this.bands[c] = new Band(this);
+        		}
+        	}
+        	Band[] tasks = new Band[chunks];
+        	for (int c = 0; c < chunks; c++) {
+        		tasks[c] = this.bands[c];
+        		tasks[c].energy = energy;
+        		tasks[c].rowStep = rowStep;
+        		tasks[c].step = step;
+        		tasks[c].width = width;
+        		tasks[c].c0 = c * CHUNK_WIDTH;
+        		tasks[c].c1 = Math.min(width, (c + 1) * CHUNK_WIDTH);
+        	}
+        	this.firstRow(energy, step, width);
+        	for (int y0 = 1; y0 < this.height; y0 += BAND_HEIGHT) {
+        		for (Band task : tasks) {
+        			task.reinitialize();
+        			task.y0 = y0;
+        			task.y1 = Math.min(this.height, y0 + BAND_HEIGHT);
+        		}
+        		ForkJoinTask.invokeAll(tasks);
+        		this.swapRows();
+        	}
+        }
+
+        /**
+         * Copies the energy of the first row into previous.
+         */
+        private void firstRow(int[] energy, int step, int width) {
+        	if (step == 1) {
+        		System.arraycopy(energy, 0, this.previous, 0, width);
+        		return;
+        	}
+        	for (int x = 0; x < width; x++) {
+        		this.previous[x] = energy[x * step];
+        	}
+        }
+
+        private void swapRows() {
+        	int[] swap = this.previous;
+        	this.previous = this.current;
+        	this.current = swap;
+        }
+
+        /**
+         * Fills the cumulative energy of row y between columns from and to.
+         *
+         * @param above the row above, with column x at x - aboveBase
+         * @param aboveBase the column of the first entry of above
+         * @param row the row to fill, with column x at x - rowBase
+         * @param rowBase the column of the first entry of row
+         * @param energy the energy plane
+         * @param energyStart the index of column 0 of this row in energy
+         * @param step the distance between two neighbouring cells of a row in energy
+         * @param moves the parent steps
+         * @param movesStart the index of column 0 of this row in moves
+         * @param from the first column to fill
+         * @param to one past the last column to fill
+         * @param ownFrom the first column whose parent step should be stored
+         * @param ownTo one past the last column whose parent step should be stored
+         * @param last the last column of the plane
+         */
+        static void fillRow(int[] above, int aboveBase, int[] row, int rowBase, int[] energy, int energyStart, int step,
+        		byte[] moves, int movesStart, int from, int to, int ownFrom, int ownTo, int last) {
+        	for (int x = from; x < to; x++) {
+        		int up = above[x - aboveBase];
+        		int left = x > 0 ? above[x - 1 - aboveBase] : Integer.MAX_VALUE;
+        		int right = x < last ? above[x + 1 - aboveBase] : Integer.MAX_VALUE;
+        		int minTableValue = Math.min(left, Math.min(up, right));
+        		row[x - rowBase] = energy[energyStart + x * step] + minTableValue;
+        		if (x >= ownFrom && x < ownTo) {
+        			moves[movesStart + x] = (byte) (SeamSolver.parentColumn(x, last, minTableValue, left, up) - x);
+        		}
+        	}
+        }
+
+        /**
+         * Works out the parent column exactly like Picture's getColumn: the column
+         * straight above wins a tie, then the only other neighbour at either edge,
+         * then the column to the left.
+         *
+         * @param x the column of the cell
+         * @param last the last column of the table
+         * @param minTableValue the smallest of the neighbours above
+         * @param left the value above and to the left
+         * @param up the value straight above
+         * @return the column of the parent cell
+         */
+        static int parentColumn(int x, int last, int minTableValue, int left, int up) {
+        	if (minTableValue == up) {
+        		return x;
+        	}
+        	if (x == 0) {
+        		return x + 1;
+        	}
+        	if (x == last) {
+        		return x - 1;
+        	}
+        	return minTableValue == left ? x - 1 : x + 1;
+        }
+
+        /**
+         * The work of one chunk of columns over one band of rows.
+         */
+        @SuppressWarnings("serial")
+        private static final class Band extends RecursiveAction
+        {
+        	private final SeamSolver solver;
+
+        	// scratch rows covering the chunk plus its widest margin, indexed x - (c0 - BAND_HEIGHT)
+        	private int[] above = new int[CHUNK_WIDTH + 2 * BAND_HEIGHT];
+        	private int[] row = new int[CHUNK_WIDTH + 2 * BAND_HEIGHT];
+
+        	private int[] energy;
+        	private int rowStep;
+        	private int step;
+        	private int width;
+        	private int c0;
+        	private int c1;
+        	private int y0;
+        	private int y1;
+
+        	Band(SeamSolver solver) {
+        		this.solver = solver;
+        	}
+
+        	@Override
+        	protected void compute() {
+        		int base = this.c0 - BAND_HEIGHT;
+        		int last = this.width - 1;
+        		for (int y = this.y0; y < this.y1; y++) {
+        			// the margin needed on each side shrinks to nothing in the last row of the band
+        			int margin = this.y1 - 1 - y;
+        			int from = Math.max(0, this.c0 - margin);
+        			int to = Math.min(this.width, this.c1 + margin);
+        			if (y == this.y0) {
+        				// the first row of the band reads the shared row left by the band above
+        				SeamSolver.fillRow(this.solver.previous, 0, this.row, base, this.energy, y * this.rowStep, this.step,
+        						this.solver.moves, y * this.solver.capacity, from, to, this.c0, this.c1, last);
+        			}
+        			else {
+        				SeamSolver.fillRow(this.above, base, this.row, base, this.energy, y * this.rowStep, this.step,
+        						this.solver.moves, y * this.solver.capacity, from, to, this.c0, this.c1, last);
+        			}
+        			int[] swap = this.above;
+        			this.above = this.row;
+        			this.row = swap;
+        		}
+        		// hand the chunk's own columns of the band's last row to the next band
+        		System.arraycopy(this.above, this.c0 - base, this.solver.current, this.c0, this.c1 - this.c0);
+        	}
+        }
+}
@@ -0,0 +1,166 @@
+package com.gradescope.photoeditor;
+
+/**
+ * The cumulative energy of every cell of an energy plane and the parent step
+ * of every cell, kept from one seam to the next, so that after a seam is
+ * removed only the cells whose inputs changed are filled again. SeamCarver
+ * finds its vertical seams with one.
+ *
+ * When a seam is removed, the table and the steps are closed up past the seam
+ * like the energy plane, which leaves every cell next to the same parents as
+ * before except near the seam. In row y, a cell can only have a new value if
+ * it is
+ *
+ *      - between columns min(seam[y - 1], seam[y]) - 1 and
+ *        max(seam[y - 1], seam[y]) + 1, where the energy was recomputed or the
+ *        cells above it are not the ones they were, or
+ *      - next to or below a cell of row y - 1 whose value changed.
+ *
+ * Those cells are filled again, row by row, and compared with what they held:
+ * when none of them changed, the rows below only need the cells around the
+ * seam. Each cell is filled with SeamSolver.fillRow, exactly as a full search
+ * fills it, so the seams are the same as searching the whole plane every time.
+ * Usually only a narrow cone under the seam changes, so a seam costs a few
+ * cells per row plus one pass over the last row.
+ *
+ * The table takes 5 bytes per cell, against 1 for a SeamSolver.
+ */
+final class SeamTable
+{
+        private final int stride;
+        private final int height;
+        private int width;
+
+        // cumulative energy of (x, y) at y * stride + x, and the step from (x, y)
+        // to its parent in row y - 1 at the same index
+        private final int[] table;
+        private final byte[] moves;
+
+        // a row being filled again, before it is compared with the table
+        private final int[] row;
+
+        // false until the first seam is searched
+        private boolean filled;
+
+        // the seam removed since the table was last brought up to date, or null
+        private int[] removed;
+
+        /**
+         * Creates a table for an energy plane laid out row by row, with the
+         * energy of (x, y) at index y * stride + x.
+         *
+         * @param width the number of columns in use in each row
+         * @param height the number of rows
+         * @param stride the distance between the start of two rows
+         */
+        SeamTable(int width, int height, int stride) {
+        	this.width = width;
+        	this.height = height;
+        	this.stride = stride;
+        	this.table = new int[stride * height];
+        	this.moves = new byte[stride * height];
+        	this.row = new int[stride];
+        }
+
+        /**
+         * Computes the lowest-energy seam of the energy plane, filling the table
+         * in full the first time and only the cells that changed afterwards.
+         *
+         * @param energy the energy plane, with the last seam removed already
+         * @return the x-coordinate of the seam in every row, exactly what
+         *      SeamSolver.computeSeam returns
+         */
+        int[] computeSeam(int[] energy) {
+        	if (!this.filled) {
+        		this.fill(energy);
+        		this.filled = true;
+        	}
+        	else if (this.removed != null) {
+        		this.repair(energy, this.removed);
+        	}
+        	this.removed = null;
+
+        	// the seam ends at the first column with the smallest total in the last row
+        	int[] seam = new int[this.height];
+        	int lastRow = (this.height - 1) * this.stride;
+        	int minColumn = 0;
+        	for (int x = 1; x < this.width; x++) {
+        		if (this.table[lastRow + x] < this.table[lastRow + minColumn]) {
+        			minColumn = x;
+        		}
+        	}
+        	seam[this.height - 1] = minColumn;
+        	for (int y = this.height - 1; y > 0; y--) {
+        		seam[y - 1] = seam[y] + this.moves[y * this.stride + seam[y]];
+        	}
+        	return seam;
+        }
+
+        /**
+         * Closes up the table past a seam that was removed from the energy plane.
+         * The cells near it are filled again by the next computeSeam, once the
+         * energy next to the seam is up to date.
+         *
+         * @param seam the x-coordinate of the seam in every row
+         */
+        void removeSeam(int[] seam) {
+        	if (this.removed != null) {
+        		// two seams in a row without a search in between: start again
+        		this.filled = false;
+        	}
+        	Picture.removeSeam(this.table, this.stride, this.width, seam);
+        	Picture.removeSeam(this.moves, this.stride, this.width, seam);
+        	this.width--;
+        	this.removed = this.filled ? seam : null;
+        }
+
+        /**
+         * Fills every cell of the table.
+         */
+        private void fill(int[] energy) {
+        	System.arraycopy(energy, 0, this.table, 0, this.width);
+        	for (int y = 1; y < this.height; y++) {
+        		SeamSolver.fillRow(this.table, -(y - 1) * this.stride, this.table, -y * this.stride, energy, y * this.stride, 1,
+        				this.moves, y * this.stride, 0, this.width, 0, this.width, this.width - 1);
+        	}
+        }
+
+        /**
+         * Fills again the cells that the removal of a seam can have changed, row
+         * by row, following the cells whose value did change down the table.
+         */
+        private void repair(int[] energy, int[] seam) {
+        	int width = this.width;
+        	int last = width - 1;
+        	// the first row is the energy, which only changed next to the seam
+        	int changedFrom = width;
+        	int changedTo = 0;
+        	for (int x = Math.max(0, seam[0] - 1); x < Math.min(width, seam[0] + 1); x++) {
+        		if (this.table[x] != energy[x]) {
+        			this.table[x] = energy[x];
+        			changedFrom = Math.min(changedFrom, x);
+        			changedTo = x + 1;
+        		}
+        	}
+        	for (int y = 1; y < this.height; y++) {
+        		int from = Math.max(0, Math.min(seam[y - 1], seam[y]) - 1);
+        		int to = Math.min(width, Math.max(seam[y - 1], seam[y]) + 2);
+        		if (changedFrom < changedTo) {
+        			from = Math.min(from, Math.max(0, changedFrom - 1));
+        			to = Math.max(to, Math.min(width, changedTo + 1));
+        		}
+        		int rowStart = y * this.stride;
+        		SeamSolver.fillRow(this.table, -(rowStart - this.stride), this.row, from, energy, rowStart, 1,
+        				this.moves, rowStart, from, to, from, to, last);
+        		changedFrom = width;
+        		changedTo = 0;
+        		for (int x = from; x < to; x++) {
+        			if (this.table[rowStart + x] != this.row[x - from]) {
+        				this.table[rowStart + x] = this.row[x - from];
+        				changedFrom = Math.min(changedFrom, x);
+        				changedTo = x + 1;
+        			}
+        		}
+        	}
+        }
+}
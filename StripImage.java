@@ -0,0 +1,215 @@
+package com.gradescope.photoeditor;
+
+import java.awt.Image;
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+import java.awt.image.DataBufferInt;
+import java.awt.image.DirectColorModel;
+import java.awt.image.Raster;
+import java.awt.image.RenderedImage;
+import java.awt.image.SampleModel;
+import java.awt.image.WritableRaster;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Vector;
+
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+
+/**
+ * An image that is decoded and adjusted a strip of rows at a time, only when a
+ * writer asks for the rows, so that it can be encoded without ever being all
+ * in memory. Used by PictureOps.stream.
+ *
+ * Every strip is a tile as wide as the image. A strip is decoded by reading
+ * its rows from the reader as a source region, and then goes through the
+ * chain of adjustments. The last strip is kept, since writers ask for rows
+ * one at a time, top to bottom; PNG, BMP and TIFF writers do.
+ */
+final class StripImage implements RenderedImage
+{
+        private final ImageReader reader;
+        private final PictureOps ops;
+        private final int width;
+        private final int height;
+        private final int stripHeight;
+        private final ColorModel colorModel;
+
+        // the last strip decoded, or null
+        private int cachedStrip = -1;
+        private Raster cached;
+
+        /**
+         * Creates an image over the first image of a reader.
+         *
+         * @param reader the reader, with its input set
+         * @param ops the adjustments to make to every strip
+         * @param stripHeight the number of rows to decode at a time
+         * @throws IOException if the size of the image cannot be read
+         */
+        StripImage(ImageReader reader, PictureOps ops, int stripHeight) throws IOException {
+        	this.reader = reader;
+        	this.ops = ops;
+        	this.width = reader.getWidth(0);
+        	this.height = reader.getHeight(0);
+        	this.stripHeight = Math.max(1, Math.min(this.height, stripHeight));
+        	boolean hasAlpha = reader.getImageTypes(0).next().getColorModel().hasAlpha();
+        	this.colorModel = hasAlpha ? ColorModel.getRGBdefault() : new DirectColorModel(24, 0xFF0000, 0xFF00, 0xFF);
+        }
+
+        @Override
+        public Vector<RenderedImage> getSources() {
+        	return null;
+        }
+
+        @Override
+        public Object getProperty(String name) {
+        	return Image.UndefinedProperty;
+        }
+
+        @Override
+        public String[] getPropertyNames() {
+        	return null;
+        }
+
+        @Override
+        public ColorModel getColorModel() {
+        	return this.colorModel;
+        }
+
+        @Override
+        public SampleModel getSampleModel() {
+        	return this.colorModel.createCompatibleSampleModel(this.width, this.stripHeight);
+        }
+
+        @Override
+        public int getWidth() {
+        	return this.width;
+        }
+
+        @Override
+        public int getHeight() {
+        	return this.height;
+        }
+
+        @Override
+        public int getMinX() {
+        	return 0;
+        }
+
+        @Override
+        public int getMinY() {
+        	return 0;
+        }
+
+        @Override
+        public int getNumXTiles() {
+        	return 1;
+        }
+
+        @Override
+        public int getNumYTiles() {
+        	return (this.height + this.stripHeight - 1) / this.stripHeight;
+        }
+
+        @Override
+        public int getMinTileX() {
+        	return 0;
+        }
+
+        @Override
+        public int getMinTileY() {
+        	return 0;
+        }
+
+        @Override
+        public int getTileWidth() {
+        	return this.width;
+        }
+
+        @Override
+        public int getTileHeight() {
+        	return this.stripHeight;
+        }
+
+        @Override
+        public int getTileGridXOffset() {
+        	return 0;
+        }
+
+        @Override
+        public int getTileGridYOffset() {
+        	return 0;
+        }
+
+        /**
+         * Decodes and adjusts a strip, unless it is the last strip decoded.
+         *
+         * @throws UncheckedIOException if the strip cannot be read
+         */
+        @Override
+        public Raster getTile(int tileX, int tileY) {
+        	if (tileY != this.cachedStrip) {
+        		int y0 = tileY * this.stripHeight;
+        		int rows = Math.min(this.stripHeight, this.height - y0);
+        		// lets the last strip go before the next one is decoded
+        		this.cached = null;
+        		this.cachedStrip = -1;
+        		int[] pixels = new int[this.width * rows];
+        		try {
+        			ImageReadParam param = this.reader.getDefaultReadParam();
+        			param.setSourceRegion(new Rectangle(0, y0, this.width, rows));
+        			BufferedImage strip = this.reader.read(0, param);
+        			strip.getRGB(0, 0, this.width, rows, pixels, 0, this.width);
+        		}
+        		catch (IOException e) {
+        			throw new UncheckedIOException(e);
+        		}
+        		this.ops.applyTo(pixels, 0, pixels.length);
+        		this.cached = Raster.createWritableRaster(this.colorModel.createCompatibleSampleModel(this.width, rows),
+        				new DataBufferInt(pixels, pixels.length), new Point(0, y0));
+        		this.cachedStrip = tileY;
+        	}
+        	return this.cached;
+        }
+
+        @Override
+        public Raster getData() {
+        	return this.getData(new Rectangle(0, 0, this.width, this.height));
+        }
+
+        @Override
+        public Raster getData(Rectangle rect) {
+        	int first = rect.y / this.stripHeight;
+        	int last = (rect.y + rect.height - 1) / this.stripHeight;
+        	if (first == last) {
+        		// the usual case: a row, or a few rows of one strip
+        		Raster strip = this.getTile(0, first);
+        		return strip.createChild(rect.x, rect.y, rect.width, rect.height, rect.x, rect.y, null);
+        	}
+        	WritableRaster data = this.colorModel.createCompatibleWritableRaster(rect.width, rect.height)
+        			.createWritableTranslatedChild(rect.x, rect.y);
+        	return this.copyData(data);
+        }
+
+        @Override
+        public WritableRaster copyData(WritableRaster raster) {
+        	if (raster == null) {
+        		raster = this.colorModel.createCompatibleWritableRaster(this.width, this.height);
+        	}
+        	Rectangle bounds = raster.getBounds().intersection(new Rectangle(0, 0, this.width, this.height));
+        	if (bounds.isEmpty()) {
+        		return raster;
+        	}
+        	int first = bounds.y / this.stripHeight;
+        	int last = (bounds.y + bounds.height - 1) / this.stripHeight;
+        	for (int s = first; s <= last; s++) {
+        		Raster strip = this.getTile(0, s);
+        		Rectangle part = strip.getBounds().intersection(bounds);
+        		raster.setRect(strip.createChild(part.x, part.y, part.width, part.height, part.x, part.y, null));
+        	}
+        	return raster;
+        }
+}
@@ -0,0 +1,211 @@
+package com.gradescope.photoeditor;
+
+import java.awt.image.DataBuffer;
+import java.util.Arrays;
+
+/**
+ * A DataBuffer of packed ARGB ints kept in square tiles that copies of the
+ * buffer share until one of them writes to a tile. Copying a buffer only
+ * copies the table of tiles, and writing a Pixel copies only the tile it is
+ * in, the first time that tile is written after being shared.
+ *
+ * Every Picture keeps its Pixels in one, which is what makes Picture(Picture)
+ * cheap: a copy that only changes a few Pixels, like showSeam painting one
+ * seam, costs a few tiles instead of a whole image.
+ *
+ * The Pixel (x, y) is element y * width + x, as in a plain DataBufferInt, so
+ * the buffer works with a SinglePixelPackedSampleModel. Java2D reaches it one
+ * element at a time through getElem and setElem; Picture uses the row methods
+ * instead, which copy whole rows of a tile at once.
+ */
+final class TiledDataBuffer extends DataBuffer
+{
+        // tiles are TILE_SIZE by TILE_SIZE Pixels; the ones along the right and
+        // bottom edges are partly unused
+        static final int TILE_SIZE = 64;
+        private static final int TILE_SHIFT = 6;
+        private static final int TILE_MASK = TILE_SIZE - 1;
+
+        private final int width;
+        private final int height;
+        private final int tilesAcross;
+
+        // tile (tx, ty) is at ty * tilesAcross + tx, with (x, y) of the tile at y * TILE_SIZE + x
+        private final int[][] tiles;
+
+        // false while a tile may be shared with another buffer, which means it has
+        // to be copied before it is written to
+        private final boolean[] owned;
+
+        // counts the writes to this buffer, Java2D's included
+        private long version;
+
+        /**
+         * Creates a buffer holding a copy of a packed raster.
+         *
+         * @param pixels the packed ARGB Pixels, row by row
+         * @param width the width of the raster
+         * @param height the height of the raster
+         */
+        TiledDataBuffer(int[] pixels, int width, int height) {
+        	super(DataBuffer.TYPE_INT, width * height);
+        	this.width = width;
+        	this.height = height;
+        	this.tilesAcross = (width + TILE_MASK) >> TILE_SHIFT;
+        	int tilesDown = (height + TILE_MASK) >> TILE_SHIFT;
+        	this.tiles = new int[this.tilesAcross * tilesDown][];
+        	this.owned = new boolean[this.tiles.length];
+        	this.setPixels(pixels);
+        }
+
+        /**
+         * Creates a buffer sharing every tile of another one.
+         */
+        private TiledDataBuffer(TiledDataBuffer shared) {
+        	super(DataBuffer.TYPE_INT, shared.width * shared.height);
+        	this.width = shared.width;
+        	this.height = shared.height;
+        	this.tilesAcross = shared.tilesAcross;
+        	this.tiles = shared.tiles.clone();
+        	this.owned = new boolean[this.tiles.length];
+        }
+
+        /**
+         * Returns a copy of this buffer that shares all of its tiles. From then on
+         * both buffers copy a tile before writing to it.
+         *
+         * @return the copy
+         */
+        TiledDataBuffer copy() {
+        	Arrays.fill(this.owned, false);
+        	return new TiledDataBuffer(this);
+        }
+
+        /**
+         * Returns a number that changes whenever a Pixel of this buffer is
+         * written, by any of the methods that write to it, so that what is worked
+         * out from the Pixels can tell whether it is still up to date.
+         *
+         * @return the number of writes to this buffer so far
+         */
+        long version() {
+        	return this.version;
+        }
+
+        @Override
+        public int getElem(int bank, int i) {
+        	int y = i / this.width;
+        	int x = i - y * this.width;
+        	int[] tile = this.tiles[(y >> TILE_SHIFT) * this.tilesAcross + (x >> TILE_SHIFT)];
+        	return tile[((y & TILE_MASK) << TILE_SHIFT) | (x & TILE_MASK)];
+        }
+
+        @Override
+        public void setElem(int bank, int i, int val) {
+        	int y = i / this.width;
+        	int x = i - y * this.width;
+        	int[] tile = this.writableTile((y >> TILE_SHIFT) * this.tilesAcross + (x >> TILE_SHIFT));
+        	tile[((y & TILE_MASK) << TILE_SHIFT) | (x & TILE_MASK)] = val;
+        }
+
+        /**
+         * Copies one row into row, starting at offset.
+         *
+         * @param y the row to copy
+         * @param row the array to copy into
+         * @param offset where in row to put the first Pixel
+         */
+        void getRow(int y, int[] row, int offset) {
+        	int tileRow = (y >> TILE_SHIFT) * this.tilesAcross;
+        	int start = (y & TILE_MASK) << TILE_SHIFT;
+        	for (int tx = 0; tx < this.tilesAcross; tx++) {
+        		int x = tx << TILE_SHIFT;
+        		System.arraycopy(this.tiles[tileRow + tx], start, row, offset + x, Math.min(TILE_SIZE, this.width - x));
+        	}
+        }
+
+        /**
+         * Replaces one row with the Pixels in row, starting at offset.
+         *
+         * @param y the row to replace
+         * @param row the array to copy from
+         * @param offset where in row the first Pixel is
+         */
+        void setRow(int y, int[] row, int offset) {
+        	int tileRow = (y >> TILE_SHIFT) * this.tilesAcross;
+        	int start = (y & TILE_MASK) << TILE_SHIFT;
+        	for (int tx = 0; tx < this.tilesAcross; tx++) {
+        		int x = tx << TILE_SHIFT;
+        		System.arraycopy(row, offset + x, this.writableTile(tileRow + tx), start, Math.min(TILE_SIZE, this.width - x));
+        	}
+        }
+
+        /**
+         * Replaces the red, green and blue of part of one row with one color,
+         * keeping the alpha of each Pixel, like Pixel.setColor.
+         *
+         * @param y the row to change
+         * @param from the x-coordinate of the first Pixel to change
+         * @param to one past the x-coordinate of the last Pixel to change
+         * @param rgb the packed color
+         */
+        void recolorRow(int y, int from, int to, int rgb) {
+        	rgb &= 0x00FFFFFF;
+        	int tileRow = (y >> TILE_SHIFT) * this.tilesAcross;
+        	int start = (y & TILE_MASK) << TILE_SHIFT;
+        	while (from < to) {
+        		int[] tile = this.writableTile(tileRow + (from >> TILE_SHIFT));
+        		int end = Math.min(to, (from | TILE_MASK) + 1);
+        		for (int x = from; x < end; x++) {
+        			int i = start | (x & TILE_MASK);
+        			tile[i] = (tile[i] & 0xFF000000) | rgb;
+        		}
+        		from = end;
+        	}
+        }
+
+        /**
+         * Copies every Pixel into pixels, row by row.
+         *
+         * @param pixels the array to copy into, at least width * height long
+         */
+        void getPixels(int[] pixels) {
+        	for (int y = 0; y < this.height; y++) {
+        		this.getRow(y, pixels, y * this.width);
+        	}
+        }
+
+        /**
+         * Replaces every Pixel with the ones in pixels, laid out row by row.
+         *
+         * @param pixels the array to copy from, at least width * height long
+         */
+        void setPixels(int[] pixels) {
+        	for (int t = 0; t < this.tiles.length; t++) {
+        		if (!this.owned[t]) {
+        			// about to be overwritten completely, so there is nothing to copy
+        			this.tiles[t] = new int[TILE_SIZE * TILE_SIZE];
+        			this.owned[t] = true;
+        		}
+        	}
+        	for (int y = 0; y < this.height; y++) {
+        		this.setRow(y, pixels, y * this.width);
+        	}
+        }
+
+        /**
+         * Returns tile t, copying it first if it may be shared. Every write goes
+         * through here.
+         *
+         * @param t the index of the tile
+         * @return a tile that only this buffer uses
+         */
+        private int[] writableTile(int t) {
+        	this.version++;
+        	if (!this.owned[t]) {
+        		this.tiles[t] = this.tiles[t].clone();
+        		this.owned[t] = true;
+        	}
+        	return this.tiles[t];
+        }
+}
@@ -0,0 +1,306 @@
+package com.gradescope.photoeditor;
+
+import java.awt.Color;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * JMH benchmarks for the hot paths of Picture, on synthetic pictures of three
+ * sizes. Every benchmark reports its throughput in calls per second, and the
+ * "pixels" counter reports Pixels processed per second, so that 1e9 divided by
+ * it is the cost in ns per Pixel. Run main() (or JMH with -prof gc) to also get
+ * the allocation rate of each benchmark.
+ *
+ * The Pictures are filled with a smooth gradient plus noise, so that seams,
+ * edges and chroma keys behave like they do on photographs rather than on flat
+ * color or pure noise.
+ *
+ * The forked JVM gets the jdk.incubator.vector module, so the color benchmarks
+ * measure VectorRasterKernels where the processor supports it, if it was
+ * compiled in from vector/. Add
+ * -jvmArgsAppend -Dpicture.scalarKernels=true to measure the scalar kernels.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "--add-modules=jdk.incubator.vector")
+@State(Scope.Benchmark)
+public class PictureBenchmark
+{
+        @Param({"640x480", "1920x1080", "7680x4320"})
+        public String size;
+
+        // seams removed by the carveMany benchmark
+        @Param({"10"})
+        public int seams;
+
+        private Picture picture;
+        private Picture background;
+        private Picture indexedPicture;
+        private List<Picture> clip;
+        private ChromaKey clipKey;
+        private int[] raster;
+        private int[] seam;
+
+        /**
+         * Counts the Pixels each benchmark has gone through.
+         */
+        @AuxCounters(AuxCounters.Type.OPERATIONS)
+        @State(Scope.Thread)
+        public static class Pixels
+        {
+        	public long pixels;
+
+        	@Setup(Level.Iteration)
+        	public void reset() {
+        		this.pixels = 0;
+        	}
+        }
+
+        @Setup(Level.Trial)
+        public void createPictures() {
+        	String[] dimensions = this.size.split("x");
+        	int width = Integer.parseInt(dimensions[0]);
+        	int height = Integer.parseInt(dimensions[1]);
+        	this.picture = PictureBenchmark.synthetic(width, height, 1);
+        	this.background = PictureBenchmark.synthetic(width, height, 2);
+        	this.raster = this.picture.getRaster().clone();
+        	this.seam = this.picture.computeSeam();
+        	this.indexedPicture = new Picture(this.picture);
+        	this.indexedPicture.precomputeRegions(0, 0, 200);
+        	// the same frame over and over, which keeps 7680x4320 clips in memory
+        	this.clip = Collections.nCopies(8, this.picture);
+        	this.clipKey = new ChromaKey(new Color(this.picture.getBasicPixel(0, 0)), 60);
+        }
+
+        /**
+         * Creates a Picture with a diagonal gradient, a few bands of solid color
+         * and some noise.
+         */
+        static Picture synthetic(int width, int height, long seed) {
+        	Random random = new Random(seed);
+        	Picture picture = new Picture(width, height);
+        	int[] pixels = picture.getRaster();
+        	for (int y = 0; y < height; y++) {
+        		for (int x = 0; x < width; x++) {
+        			int red = (x * 255 / width + random.nextInt(16)) & 0xFF;
+        			int green = (y * 255 / height + random.nextInt(16)) & 0xFF;
+        			int blue = (x / 64 + y / 64) % 3 == 0 ? 40 : 200;
+        			pixels[y * width + x] = 0xFF000000 | (red << 16) | (green << 8) | blue;
+        		}
+        	}
+        	picture.setRaster(pixels);
+        	return picture;
+        }
+
+        private long area() {
+        	return (long) this.picture.getWidth() * this.picture.getHeight();
+        }
+
+        //////////////////////////// Seam Carving /////////////////////////////////
+
+        @Benchmark
+        public int[] computeSeam(Pixels counter) {
+        	counter.pixels += this.area();
+        	return this.picture.computeSeam();
+        }
+
+        @Benchmark
+        public int[] computeSeamPyramid(Pixels counter) {
+        	counter.pixels += this.area();
+        	return this.picture.computeSeam(32);
+        }
+
+        @Benchmark
+        public int[][] fillTables(Pixels counter) {
+        	counter.pixels += this.area();
+        	return this.picture.getTableAfterFillTables();
+        }
+
+        @Benchmark
+        public Picture carve(Pixels counter) {
+        	counter.pixels += this.area();
+        	return this.picture.carve();
+        }
+
+        @Benchmark
+        public Picture carveKnownSeam(Pixels counter) {
+        	counter.pixels += this.area();
+        	return this.picture.carve(this.seam);
+        }
+
+        @Benchmark
+        public Picture carveMany(Pixels counter) {
+        	counter.pixels += this.area() * this.seams;
+        	return this.picture.carveMany(this.seams);
+        }
+
+        @Benchmark
+        public Picture carveManyPyramid(Pixels counter) {
+        	counter.pixels += this.area() * this.seams;
+        	return this.picture.carveMany(this.seams, 32);
+        }
+
+        @Benchmark
+        public Picture energy(Pixels counter) {
+        	counter.pixels += this.area();
+        	return this.picture.energy();
+        }
+
+        @Benchmark
+        public Picture luminosity(Pixels counter) {
+        	counter.pixels += this.area();
+        	return this.picture.luminosity();
+        }
+
+        //////////////////////////// Colors /////////////////////////////////
+
+        @Benchmark
+        public byte[] luminancePlane(Pixels counter) {
+        	counter.pixels += this.area();
+        	// the static version, since the Picture keeps its own plane between calls
+        	return Picture.luminancePlane(this.raster);
+        }
+
+        @Benchmark
+        public Picture grayscale(Pixels counter) {
+        	counter.pixels += this.area();
+        	return this.picture.grayscale();
+        }
+
+        @Benchmark
+        public Picture negate(Pixels counter) {
+        	counter.pixels += this.area();
+        	return this.picture.negate();
+        }
+
+        @Benchmark
+        public Picture lighten(Pixels counter) {
+        	counter.pixels += this.area();
+        	return this.picture.lighten(20);
+        }
+
+        @Benchmark
+        public Picture separateAdjustments(Pixels counter) {
+        	counter.pixels += this.area();
+        	return this.picture.lighten(20).addRed(10).negate().grayscale();
+        }
+
+        @Benchmark
+        public Picture chainedAdjustments(Pixels counter) {
+        	counter.pixels += this.area();
+        	return this.picture.ops().lighten(20).addRed(10).negate().grayscale().toPicture();
+        }
+
+        //////////////////////////// Geometry /////////////////////////////////
+
+        @Benchmark
+        public Picture rotateRight(Pixels counter) {
+        	counter.pixels += this.area();
+        	return this.picture.rotateRight();
+        }
+
+        @Benchmark
+        public Picture flipHorizontal(Pixels counter) {
+        	counter.pixels += this.area();
+        	return this.picture.flip(Picture.HORIZONTAL);
+        }
+
+        @Benchmark
+        public Picture flipVertical(Pixels counter) {
+        	counter.pixels += this.area();
+        	return this.picture.flip(Picture.VERTICAL);
+        }
+
+        @Benchmark
+        public Picture flipForwardDiagonal(Pixels counter) {
+        	counter.pixels += this.area();
+        	return this.picture.flip(Picture.FORWARD_DIAGONAL);
+        }
+
+        @Benchmark
+        public Picture flipBackwardDiagonal(Pixels counter) {
+        	counter.pixels += this.area();
+        	return this.picture.flip(Picture.BACKWARD_DIAGONAL);
+        }
+
+        //////////////////////////// Extra Credit /////////////////////////////////
+
+        @Benchmark
+        public Picture showEdges(Pixels counter) {
+        	counter.pixels += this.area();
+        	return this.picture.showEdges(20);
+        }
+
+        @Benchmark
+        public Picture chromaKey(Pixels counter) {
+        	counter.pixels += this.area();
+        	return this.picture.chromaKey(0, 0, this.background, 60);
+        }
+
+        @Benchmark
+        public int chromaKeyClip(Pixels counter) {
+        	counter.pixels += this.clip.size() * this.area();
+        	int[] checksum = new int[1];
+        	this.clipKey.applyAll(this.clip, this.background, frame -> checksum[0] += frame.getBasicPixel(0, 0));
+        	return checksum[0];
+        }
+
+        @Benchmark
+        public Picture blur20(Pixels counter) {
+        	counter.pixels += this.area();
+        	return this.picture.blur(20);
+        }
+
+        @Benchmark
+        public Picture blur50(Pixels counter) {
+        	counter.pixels += this.area();
+        	return this.picture.blur(50);
+        }
+
+        @Benchmark
+        public Picture paintBucket(Pixels counter) {
+        	counter.pixels += this.area();
+        	return this.picture.paintBucket(0, 0, 200, Color.RED);
+        }
+
+        @Benchmark
+        public Picture paintBucketPrecomputed(Pixels counter) {
+        	counter.pixels += this.area();
+        	return this.indexedPicture.paintBucket(0, 0, 200, Color.RED);
+        }
+
+        /**
+         * Runs every benchmark with the GC profiler, which adds the allocation rate
+         * in MB/sec and bytes per call to the results.
+         */
+        public static void main(String[] args) throws RunnerException {
+        	Options options = new OptionsBuilder()
+        			.include(PictureBenchmark.class.getSimpleName())
+        			.addProfiler(GCProfiler.class)
+        			.build();
+        	new Runner(options).run();
+        }
+}
@@ -1,7 +1,18 @@
 package com.gradescope.photoeditor;
 
 import java.awt.*;
+import java.awt.image.*;
+import java.io.File;
+import java.io.IOException;
 import java.net.URL;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
 
 public class Picture extends SimplePicture
 {
@@ -13,6 +24,21 @@ public class Picture extends SimplePicture
         public static final int FORWARD_DIAGONAL = 3;
         public static final int BACKWARD_DIAGONAL = 4;
 
+        // seed colors whose regions paintBucket keeps at once
+        private static final int MAX_REGION_INDEXES = 4;
+
+        /////////////////////////// Instance Variables ////////////////////////////
+
+        // the regions labelled by precomputeRegions for regionsThreshold, by seed
+        // color; null until then and again when a Pixel changes through this
+        // Picture, and only used while regionsCurrent()
+        private Map<Integer, RegionIndex> regions;
+        private int regionsThreshold;
+
+        // the tiles the regions were labelled from, and how many writes they had had
+        private TiledDataBuffer regionsTiles;
+        private long regionsVersion;
+
 
         //////////////////////////// Constructors /////////////////////////////////
 
@@ -20,7 +46,7 @@ public class Picture extends SimplePicture
          * A constructor that takes no arguments.
          */
         public Picture () {
-                super();
+                this(new SimplePicture());
         }
 
         /**
@@ -29,8 +55,40 @@ public class Picture extends SimplePicture
          * @param fileName The name of the file to create the picture from.
          */
         public Picture(String fileName) {
-                // Let the parent class handle this fileName.
-                super(fileName);
+                // Let the parent class load this fileName, then keep its Pixels in tiles.
+                this(new SimplePicture(fileName));
+        }
+
+        /**
+         * Creates a Picture from every subsampling-th Pixel of every
+         * subsampling-th row of a file, as a preview or for a quick carveMany. The
+         * reader skips the other Pixels as it decodes, so a subsampling of 4 makes
+         * a Picture of a sixteenth of the size without ever decoding the file at
+         * full size.
+         *
+         * @param fileName The name of the file to create the picture from.
+         * @param subsampling the step between the Pixels and rows kept, 1 for all
+         * @throws IllegalArgumentException if subsampling is less than 1
+         */
+        public Picture(String fileName, int subsampling) {
+                this(fileName, subsampling, null);
+        }
+
+        /**
+         * Creates a Picture from part of a file, subsampled. Only the rows of the
+         * region are decoded, and with a subsampling of more than 1 only every
+         * subsampling-th Pixel of every subsampling-th row of it is kept, starting
+         * from its top left corner.
+         *
+         * @param fileName The name of the file to create the picture from.
+         * @param subsampling the step between the Pixels and rows kept, 1 for all
+         * @param region the part of the image to keep, in the Pixels of the full
+         *      image, or null for all of it; parts outside the image are left out
+         * @throws IllegalArgumentException if subsampling is less than 1 or the
+         *      region is outside the image
+         */
+        public Picture(String fileName, int subsampling, Rectangle region) {
+                this(Picture.tiledCopy(Picture.decode(fileName, subsampling, region)), fileName);
         }
 
         /**
@@ -41,27 +99,45 @@ public class Picture extends SimplePicture
          */
         public Picture(int width, int height) {
                 // Let the parent class handle this width and height.
-                super(width, height);
+                this(new SimplePicture(width, height));
         }
 
         /**
          * Creates a copy of the Picture provided.
          *
+         * The copy is made copy-on-write: it shares its Pixels with pictureToCopy
+         * in tiles of 64 by 64, and only copies a tile when one of the two Pictures
+         * writes to it, so copying a Picture only costs a table of tiles. Every
+         * Picture keeps its Pixels in tiles from the moment it is made (see
+         * tiledCopy), so every write to it, a Graphics included, goes through them.
+         *
          * @param pictureToCopy Picture to be copied.
          */
         public Picture (Picture pictureToCopy) {
-                // Let the parent class do the copying.
-                super(pictureToCopy);
+                this(pictureToCopy.copyOnWriteImage(), pictureToCopy.getFileName());
         }
 
         /**
-         * Creates a copy of the SimplePicture provided.
+         * Creates a Picture around an image that is used as is, which is backed by
+         * tiles for every Picture made by the constructors above.
+         *
+         * @param image the image of the new Picture
+         * @param fileName the file name the new Picture reports
+         */
+        private Picture(BufferedImage image, String fileName) {
+                super(image);
+                this.setFileName(fileName);
+        }
+
+        /**
+         * Creates a copy of the SimplePicture provided, which is copy-on-write if
+         * it is a Picture.
          *
          * @param pictureToCopy SimplePicture to be copied.
          */
         public Picture (SimplePicture pictureToCopy) {
-                // Let the parent class do the copying.
-                super(pictureToCopy);
+                this(pictureToCopy instanceof Picture ? ((Picture) pictureToCopy).copyOnWriteImage()
+                                : Picture.tiledCopy(pictureToCopy.getBufferedImage()), pictureToCopy.getFileName());
         }
 
         /////////////////////////////// Methods ///////////////////////////////////
@@ -129,6 +205,346 @@ public class Picture extends SimplePicture
                 return new Picture(url.getFile().replaceAll("%20", " "));
         }
 
+        /**
+         * Helper method for loading part of a picture in the current directory,
+         * subsampled, as Picture(String, int, Rectangle) does.
+         */
+        protected static Picture loadPicture(String pictureName, int subsampling, Rectangle region) {
+                URL url = Picture.class.getResource(pictureName);
+                return new Picture(url.getFile().replaceAll("%20", " "), subsampling, region);
+        }
+
+        /**
+         * Helper method for the subsampling constructors that decodes part of a
+         * file. Like SimplePicture does when it loads a file, the image is drawn
+         * into an opaque image of packed ints.
+         *
+         * @param fileName the name of the file to decode
+         * @param subsampling the step between the Pixels and rows kept
+         * @param region the part of the image to decode, or null for all of it
+         * @return the decoded image, or an image of a single black Pixel if the
+         *      file cannot be read
+         */
+        private static BufferedImage decode(String fileName, int subsampling, Rectangle region) {
+        	if (subsampling < 1) {
+        		throw new IllegalArgumentException("Cannot subsample by " + subsampling);
+        	}
+        	try (ImageInputStream input = ImageIO.createImageInputStream(new File(fileName))) {
+        		Iterator<ImageReader> readers = input == null ? null : ImageIO.getImageReaders(input);
+        		if (readers == null || !readers.hasNext()) {
+        			throw new IOException("no reader for the file");
+        		}
+        		ImageReader reader = readers.next();
+        		BufferedImage decoded;
+        		try {
+        			reader.setInput(input, true, true);
+        			ImageReadParam param = reader.getDefaultReadParam();
+        			param.setSourceSubsampling(subsampling, subsampling, 0, 0);
+        			if (region != null) {
+        				Rectangle bounds = region.intersection(new Rectangle(0, 0, reader.getWidth(0), reader.getHeight(0)));
+        				if (bounds.isEmpty()) {
+        					throw new IllegalArgumentException("Region " + region + " is outside the image of size "
+        							+ reader.getWidth(0) + "x" + reader.getHeight(0));
+        				}
+        				param.setSourceRegion(bounds);
+        			}
+        			decoded = reader.read(0, param);
+        		}
+        		finally {
+        			reader.dispose();
+        		}
+        		if (decoded.getType() == BufferedImage.TYPE_INT_RGB) {
+        			return decoded;
+        		}
+        		BufferedImage image = new BufferedImage(decoded.getWidth(), decoded.getHeight(), BufferedImage.TYPE_INT_RGB);
+        		Graphics2D graphics = image.createGraphics();
+        		graphics.drawImage(decoded, 0, 0, null);
+        		graphics.dispose();
+        		return image;
+        	}
+        	catch (IOException e) {
+        		System.err.println("Cannot load " + fileName + ": " + e.getMessage());
+        		return new BufferedImage(1, 1, BufferedImage.TYPE_INT_RGB);
+        	}
+        }
+
+        //////////////////////////// Packed Raster /////////////////////////////////
+
+        /**
+         * Returns the Pixels of this Picture as one flat array of packed ARGB ints,
+         * row by row, so that (x, y) is found at index y * getWidth() + x. A Picture
+         * without an alpha channel reports an alpha of 255 for every Pixel.
+         *
+         * The Pixels are gathered from the tiles the Picture keeps them in, a row
+         * of a tile at a time, so no Pixel or Color objects are involved at all.
+         * Only an image that SimplePicture.load put in place of the tiles may hand
+         * back the array backing it instead. Either way, pass the array to
+         * setRaster after changing it.
+         *
+         * @return the packed ARGB Pixels of this Picture
+         */
+        public int[] getRaster() {
+        	int[] pixels = this.backingArray();
+        	if (pixels == null) {
+        		int width = this.getWidth();
+        		TiledDataBuffer tiles = this.tiles();
+        		if (tiles == null) {
+        			return this.getBufferedImage().getRGB(0, 0, width, this.getHeight(), null, 0, width);
+        		}
+        		pixels = new int[width * this.getHeight()];
+        		tiles.getPixels(pixels);
+        	}
+        	if (!this.getBufferedImage().getColorModel().hasAlpha()) {
+        		// the top byte is ignored by an opaque image, so it can be filled in place
+        		for (int i = 0; i < pixels.length; i++) {
+        			pixels[i] |= 0xFF000000;
+        		}
+        	}
+        	return pixels;
+        }
+
+        /**
+         * Replaces every Pixel of this Picture with the packed ARGB ints provided,
+         * laid out as described in getRaster().
+         *
+         * @param pixels the packed ARGB Pixels, at least getWidth() * getHeight() long
+         */
+        public void setRaster(int[] pixels) {
+        	int[] backing = this.backingArray();
+        	this.changed();
+        	if (backing == pixels) {
+        		return;
+        	}
+        	int width = this.getWidth();
+        	int height = this.getHeight();
+        	TiledDataBuffer tiles = this.tiles();
+        	if (backing != null) {
+        		System.arraycopy(pixels, 0, backing, 0, width * height);
+        	}
+        	else if (tiles != null) {
+        		tiles.setPixels(pixels);
+        	}
+        	else {
+        		this.getBufferedImage().setRGB(0, 0, width, height, pixels, 0, width);
+        	}
+        }
+
+        /**
+         * Copies one row of this Picture into row as packed ARGB ints.
+         *
+         * @param y the row to copy
+         * @param row the array to copy into
+         * @param offset where in row to put the first Pixel
+         */
+        public void getRow(int y, int[] row, int offset) {
+        	int width = this.getWidth();
+        	int[] backing = this.backingArray();
+        	TiledDataBuffer tiles = this.tiles();
+        	if (backing != null) {
+        		System.arraycopy(backing, y * width, row, offset, width);
+        	}
+        	else if (tiles != null) {
+        		tiles.getRow(y, row, offset);
+        	}
+        	else {
+        		this.getBufferedImage().getRGB(0, y, width, 1, row, offset, width);
+        		return;
+        	}
+        	if (!this.getBufferedImage().getColorModel().hasAlpha()) {
+        		for (int i = offset; i < offset + width; i++) {
+        			row[i] |= 0xFF000000;
+        		}
+        	}
+        }
+
+        /**
+         * Replaces one row of this Picture with the packed ARGB ints in row.
+         *
+         * @param y the row to replace
+         * @param row the array to copy from
+         * @param offset where in row the first Pixel is
+         */
+        public void setRow(int y, int[] row, int offset) {
+        	this.changed();
+        	int width = this.getWidth();
+        	int[] backing = this.backingArray();
+        	TiledDataBuffer tiles = this.tiles();
+        	if (backing != null) {
+        		System.arraycopy(row, offset, backing, y * width, width);
+        	}
+        	else if (tiles != null) {
+        		tiles.setRow(y, row, offset);
+        	}
+        	else {
+        		this.getBufferedImage().setRGB(0, y, width, 1, row, offset, width);
+        	}
+        }
+
+        /**
+         * Changes the Pixel at (x, y), which is also how Pixel writes its colors
+         * back, and forgets the regions labelled by precomputeRegions.
+         *
+         * @param x the x-coordinate of the Pixel
+         * @param y the y-coordinate of the Pixel
+         * @param rgb the new color, packed as in getRaster()
+         */
+        @Override
+        public void setBasicPixel(int x, int y, int rgb) {
+        	this.changed();
+        	super.setBasicPixel(x, y, rgb);
+        }
+
+        /**
+         * Forgets everything this Picture keeps about its Pixels, after one of
+         * them has changed.
+         */
+        private void changed() {
+        	this.regions = null;
+        }
+
+        /**
+         * Helper method for the raster methods that finds the tiles behind the
+         * image.
+         *
+         * @return the tiles backing the image, or null if SimplePicture.load put
+         *      another image in their place
+         */
+        private TiledDataBuffer tiles() {
+        	DataBuffer buffer = this.getBufferedImage().getRaster().getDataBuffer();
+        	return buffer instanceof TiledDataBuffer ? (TiledDataBuffer) buffer : null;
+        }
+
+        /**
+         * Helper method for Picture(Picture) that makes a new image sharing the
+         * Pixels of this one, copy-on-write.
+         *
+         * @return an image backed by tiles shared with this Picture
+         */
+        private BufferedImage copyOnWriteImage() {
+        	BufferedImage image = this.getBufferedImage();
+        	TiledDataBuffer tiles = this.tiles();
+        	if (tiles == null) {
+        		// only after SimplePicture.load replaced the image, which can then be
+        		// written to without going through tiles: nothing of it can be shared
+        		return Picture.tiledCopy(image);
+        	}
+        	return Picture.imageOf(tiles.copy(), this.getWidth(), this.getHeight(), image.getColorModel().hasAlpha());
+        }
+
+        /**
+         * Helper method for the constructors that copies an image into a new one
+         * backed by tiles, with or without alpha like the image.
+         *
+         * @param image the image to copy
+         * @return an image backed by tiles of its own
+         */
+        private static BufferedImage tiledCopy(BufferedImage image) {
+        	int width = image.getWidth();
+        	int height = image.getHeight();
+        	int[] pixels = Picture.backingArray(image);
+        	if (pixels == null) {
+        		pixels = image.getRGB(0, 0, width, height, null, 0, width);
+        	}
+        	return Picture.imageOf(new TiledDataBuffer(pixels, width, height), width, height,
+        			image.getColorModel().hasAlpha());
+        }
+
+        /**
+         * Returns a new Picture with the same size, file name and alpha channel as
+         * this one, holding the packed ARGB raster provided, which is copied into
+         * tiles and can be reused by the caller afterwards.
+         *
+         * @param pixels the packed ARGB Pixels of the new Picture, laid out as in getRaster()
+         * @return the new Picture
+         */
+        Picture copyWithRaster(int[] pixels) {
+        	BufferedImage image = Picture.imageOf(new TiledDataBuffer(pixels, this.getWidth(), this.getHeight()),
+        			this.getWidth(), this.getHeight(), this.getBufferedImage().getColorModel().hasAlpha());
+        	return new Picture(image, this.getFileName());
+        }
+
+        /**
+         * Returns the Pixels of this Picture in a new array that the caller may
+         * change, laid out as in getRaster().
+         *
+         * @return a copy of the packed ARGB Pixels of this Picture
+         */
+        int[] getRasterCopy() {
+        	if (this.backingArray() == null) {
+        		// getRaster already returns a copy
+        		return this.getRaster();
+        	}
+        	return this.getRaster().clone();
+        }
+
+        /**
+         * Creates a packed int image over the buffer provided, which holds
+         * element y * width + x for the Pixel (x, y).
+         *
+         * @param buffer the Pixels of the image
+         * @param width the width of the image
+         * @param height the height of the image
+         * @param hasAlpha true for an image with an alpha channel, false for an opaque one
+         * @return the new image
+         */
+        static BufferedImage imageOf(DataBuffer buffer, int width, int height, boolean hasAlpha) {
+        	ColorModel model = hasAlpha ? ColorModel.getRGBdefault() : new DirectColorModel(24, 0xFF0000, 0xFF00, 0xFF);
+        	WritableRaster raster = Raster.createWritableRaster(model.createCompatibleSampleModel(width, height), buffer, null);
+        	return new BufferedImage(model, raster, false, null);
+        }
+
+        /**
+         * Helper method for the raster methods that finds the int array behind the
+         * image, if the image keeps its Pixels as one packed int per Pixel with no
+         * padding between rows.
+         *
+         * @return the array backing the image, or null if there is none
+         */
+        private int[] backingArray() {
+        	return Picture.backingArray(this.getBufferedImage());
+        }
+
+        /**
+         * Helper method for backingArray() and tiledCopy that works on any image.
+         *
+         * @param image the image
+         * @return the array backing the image, or null if there is none
+         */
+        private static int[] backingArray(BufferedImage image) {
+        	int type = image.getType();
+        	if (type != BufferedImage.TYPE_INT_ARGB && type != BufferedImage.TYPE_INT_RGB) {
+        		return null;
+        	}
+        	WritableRaster raster = image.getRaster();
+        	if (!(raster.getDataBuffer() instanceof DataBufferInt)
+        			|| !(raster.getSampleModel() instanceof SinglePixelPackedSampleModel)
+        			|| raster.getSampleModelTranslateX() != 0 || raster.getSampleModelTranslateY() != 0) {
+        		return null;
+        	}
+        	DataBufferInt buffer = (DataBufferInt) raster.getDataBuffer();
+        	SinglePixelPackedSampleModel model = (SinglePixelPackedSampleModel) raster.getSampleModel();
+        	if (buffer.getNumBanks() != 1 || buffer.getOffset() != 0
+        			|| model.getScanlineStride() != image.getWidth()) {
+        		return null;
+        	}
+        	return buffer.getData();
+        }
+
+        /**
+         * Returns the squared color distance between two packed ARGB Pixels, which is
+         * the square of Pixel.colorDistance for the same two colors.
+         *
+         * @param argb1 the first Pixel
+         * @param argb2 the second Pixel
+         * @return the sum of the squared differences of red, green and blue
+         */
+        static int colorDistanceSquared(int argb1, int argb2) {
+        	int red = ((argb1 >> 16) & 0xFF) - ((argb2 >> 16) & 0xFF);
+        	int green = ((argb1 >> 8) & 0xFF) - ((argb2 >> 8) & 0xFF);
+        	int blue = (argb1 & 0xFF) - (argb2 & 0xFF);
+        	return red * red + green * green + blue * blue;
+        }
+
         //////////////////////////// Debugging Methods /////////////////////////////////
 
         /**
@@ -137,11 +553,12 @@ public class Picture extends SimplePicture
         public void printLuminosity(){
                 int pictureHeight = this.getHeight();
                 int pictureWidth = this.getWidth();
+                byte[] luminance = this.luminancePlane();
                 System.out.println("Luminosity:");
                 for(int y = 0; y < pictureHeight; y++) {
                         System.out.print("[");
                         for(int x = 0; x < pictureWidth; x++) {
-                                System.out.print(this.luminosityOfPixel(x, y) + "\t");
+                                System.out.print((luminance[y * pictureWidth + x] & 0xFF) + "\t");
                         }
                         System.out.println("]");
                 }
@@ -152,11 +569,12 @@ public class Picture extends SimplePicture
         public void printEnergy(){
                 int pictureHeight = this.getHeight();
                 int pictureWidth = this.getWidth();
+                int[] energies = this.energyPlane();
                 System.out.println("Energy:");
                 for(int y = 0; y < pictureHeight; y++) {
                         System.out.print("[");
                         for(int x = 0; x < pictureWidth; x++) {
-                                System.out.print(this.getEnergy(x, y) + "\t");
+                                System.out.print(energies[y * pictureWidth + x] + "\t");
                         }
                         System.out.println("]");
                 }
@@ -280,55 +698,16 @@ public class Picture extends SimplePicture
          *      new picture to the same value: the average of the red, green, and blue
          *      components of the same pixel in the original.
          *
-         * This example shows a more modular approach: grayscale uses a helper
-         * named setPixelToGray; setPixelToGray, in turn, uses the helper averageOfRGB.
+         * The averaging is done a whole row at a time on the packed raster by
+         * RasterKernels.grayscale, which rounds down just like the integer
+         * division in grayscaleNoHelper.
          *
          * @return A new Picture that is the grayscale version of this Picture.
          */
         public Picture grayscale() {
-                Picture picOutput = new Picture(this);
-
-                int pictureHeight = this.getHeight();
-                int pictureWidth = this.getWidth();
-
-                for(int x = 0; x < pictureWidth; x++) {
-                        for(int y = 0; y < pictureHeight; y++) {
-                                picOutput.setPixelToGray(x, y);
-                        }
-                }
-                return picOutput;
-        }
-
-        /**
-         * Helper method for grayscale() to set a pixel at (x, y) to be gray.
-         *
-         * @param x The x-coordinate of the pixel to be set to gray.
-         * @param y The y-coordinate of the pixel to be set to gray.
-         */
-        private void setPixelToGray(int x, int y) {
-                Pixel currentPixel = this.getPixel(x, y);
-                int average = Picture.averageOfRGB(currentPixel.getColor());
-                currentPixel.setRed(average);
-                currentPixel.setGreen(average);
-                currentPixel.setBlue(average);
-        }
-        /**
-         * Helper method for grayscale() to calculate the
-         * average value of red, green and blue.
-         *
-         * @param c is the Color to be averaged
-         * @return The average of the red, green and blue values of this Color
-         */
-        private static int averageOfRGB(Color c) {
-                int redComponent = c.getRed();
-                int greenComponent = c.getGreen();
-                int blueComponent = c.getBlue();
-
-                // this uses integer division, which is what we want here
-                // pixels always need to have integer values from 0 to 255 (inclusive)
-                // for their red, green, and blue components:
-                int average = (redComponent + greenComponent + blueComponent) / 3;
-                return average;
+        	int[] pixels = this.getRasterCopy();
+        	RasterKernels.INSTANCE.grayscale(pixels, 0, pixels.length);
+        	return this.copyWithRaster(pixels);
         }
 
         //////////////////////////// Change Colors Menu /////////////////////////////////
@@ -344,26 +723,10 @@ public class Picture extends SimplePicture
          * @return A new Picture that is the photonegative version of this Picture.
          */
         public Picture negate() {
-               Picture picOutput = new Picture(this);
-               int pictureHeight = this.getHeight();
-               int pictureWidth = this.getWidth();
-               for (int x = 0; x < pictureWidth; x++) {
-                   for (int y = 0; y < pictureHeight; y++) {
-
-                           Pixel currentPixel = picOutput.getPixel(x, y);
-
-                           Color c = currentPixel.getColor();
-                           int redComponent = c.getRed();
-                           int greenComponent = c.getGreen();
-                           int blueComponent = c.getBlue();
-
-                           // set each color component to 255 minus the current value of respective component
-                           currentPixel.setRed(255-redComponent);
-                           currentPixel.setGreen(255-greenComponent);
-                           currentPixel.setBlue(255-blueComponent);
-                   }
-               }
-               return picOutput;
+        	int[] pixels = this.getRasterCopy();
+        	// flipping the low 24 bits sets each color component to 255 minus its current value
+        	RasterKernels.INSTANCE.negate(pixels, 0, pixels.length);
+        	return this.copyWithRaster(pixels);
         }
         //////////////////////////// Lighten /////////////////////////////////
 
@@ -390,28 +753,10 @@ public class Picture extends SimplePicture
          * @return the final picture
          */
         public Picture rgbValueHelper(int r, int g, int b) {
-        	Picture picOutput = new Picture(this);
-        	int pictureHeight = this.getHeight();
-            int pictureWidth = this.getWidth();
-            for (int x = 0; x < pictureWidth; x++) {
-                for (int y = 0; y < pictureHeight; y++) {
-
-                        Pixel currentPixel = picOutput.getPixel(x, y);
-
-                        Color c = currentPixel.getColor();
-                        int redComponent = c.getRed();
-                        int greenComponent = c.getGreen();
-                        int blueComponent = c.getBlue();
-                        // the use of Math.max and Math.min ensures that the RGB values stay between 0 and 255
-                    	redComponent = Math.max(0, Math.min(255, c.getRed() + r));
-                    	greenComponent = Math.max(0, Math.min(255, c.getGreen() + g));
-                    	blueComponent = Math.max(0, Math.min(255, c.getBlue() + b));
-                        currentPixel.setRed(redComponent);
-                        currentPixel.setGreen(greenComponent);
-                        currentPixel.setBlue(blueComponent);
-                }
-            }
-            return picOutput;
+        	int[] pixels = this.getRasterCopy();
+        	// the kernel keeps the RGB values between 0 and 255
+        	RasterKernels.INSTANCE.add(pixels, 0, pixels.length, r, g, b);
+        	return this.copyWithRaster(pixels);
         }
 
         //////////////////////////// Darken /////////////////////////////////
@@ -470,6 +815,20 @@ public class Picture extends SimplePicture
         	return rgbValueHelper(0, amount, 0);
         }
 
+        //////////////////////////// Chained Adjustments /////////////////////////////////
+
+        /**
+         * Starts a chain of color adjustments on this Picture that are only carried
+         * out by PictureOps.toPicture(), all in one pass and with a single copy. For
+         * example, pic.ops().lighten(20).addRed(10).negate().grayscale().toPicture()
+         * is the same Picture as pic.lighten(20).addRed(10).negate().grayscale().
+         *
+         * @return an empty chain of adjustments for this Picture
+         */
+        public PictureOps ops() {
+        	return new PictureOps(this);
+        }
+
         //////////////////////////// Rotate Right /////////////////////////////////
 
         /**
@@ -480,20 +839,20 @@ public class Picture extends SimplePicture
          * @return a new Picture rotated right by 90 degrees
          */
         public Picture rotateRight() {
-        	int origHeight = this.getHeight();
-        	int origWidth = this.getWidth();
-        	Picture finalPic = new Picture(origHeight, origWidth);
-        	
-        	for (int origX = 0; origX < origWidth; origX++) {
-        	    for (int origY = 0; origY < origHeight; origY++) {
-        	        Pixel origPixel = this.getPixel(origX, origY);
-        	        int finalX = origHeight - origY - 1;
-        	        int finalY = origX;
-        	        finalPic.getPixel(finalX, finalY).setColor(origPixel.getColor());
-        	     }
-        	 }
-        	    
-        	 return finalPic;
+        	// a single pass through a view, instead of a getPixel and setColor per Pixel
+        	return this.view().rotateRight().toPicture();
+        }
+
+        /**
+         * Returns a view of this Picture that can be rotated and flipped any number
+         * of times without copying a Pixel, until PictureView.toPicture() copies
+         * it once. For example pic.view().rotateRight().flip(Picture.VERTICAL)
+         * looks like pic.rotateRight().flip(Picture.VERTICAL).
+         *
+         * @return a view of this Picture as it is
+         */
+        public PictureView view() {
+        	return new PictureView(this);
         }
 
         //////////////////////////// Seam Carving Section /////////////////////////////////
@@ -510,22 +869,11 @@ public class Picture extends SimplePicture
          * @return A new Picture that is the luminosity version of this Picture.
          */
         public Picture luminosity(){
-        	Picture picOutput = new Picture(this);
-        	int pictureHeight = this.getHeight();
-            int pictureWidth = this.getWidth();
-            for (int x = 0; x < pictureWidth; x++) {
-                for (int y = 0; y < pictureHeight; y++) {
-
-                        Pixel currentPixel = picOutput.getPixel(x, y);
-                        int lumin = luminosityOfPixel(x,y);
-
-                        // sets the pixel's R, G, and B values to the luminosity values for that pixel
-                        currentPixel.setRed(lumin);
-                        currentPixel.setGreen(lumin);
-                        currentPixel.setBlue(lumin);
-                }
-            }
-            return picOutput;
+        	byte[] luminance = this.luminancePlane();
+        	int[] pixels = this.getRasterCopy();
+        	// sets the pixel's R, G, and B values to the luminosity values for that pixel
+        	RasterKernels.INSTANCE.gray(luminance, pixels, 0, pixels.length);
+        	return this.copyWithRaster(pixels);
         }
 
 
@@ -538,9 +886,59 @@ public class Picture extends SimplePicture
          * @return The luminosity of that pixel
          */
         private int luminosityOfPixel(int x, int y) {
-        	// uses the provided formula to calculate the luminosity of the pixel at coordinates x, y.
-        	Pixel origPixel = this.getPixel(x, y);
-        	return (int)(0.21 * origPixel.getRed() + 0.72 * origPixel.getGreen() + 0.07 * origPixel.getBlue());
+        	return Picture.luminosityOf(this.getBasicPixel(x, y));
+        }
+
+        /**
+         * Helper method for luminosityOfPixel() that works on a packed ARGB Pixel.
+         *
+         * The formula is worked out in integers as (21 * red + 72 * green + 7 * blue)
+         * / 100, with the division done as a multiply and a shift. That is the same
+         * as the (int) cast of the formula in doubles except when the sum is an exact
+         * multiple of 100: 0.21, 0.72 and 0.07 are not exact in binary, so the doubles
+         * can land just below the whole number, and those colors are left to the
+         * double formula.
+         *
+         * @param argb the Pixel, packed as in getRaster()
+         * @return The luminosity of that pixel
+         */
+        static int luminosityOf(int argb) {
+        	int red = (argb >> 16) & 0xFF;
+        	int green = (argb >> 8) & 0xFF;
+        	int blue = argb & 0xFF;
+        	int weighted = 21 * red + 72 * green + 7 * blue;
+        	// 5243 / 2^19 is close enough to 1 / 100 to be exact for sums up to 25500
+        	int lumin = (weighted * 5243) >>> 19;
+        	if (lumin * 100 == weighted) {
+        		// uses the provided formula to calculate the luminosity of the pixel
+        		return (int)(0.21 * red + 0.72 * green + 0.07 * blue);
+        	}
+        	return lumin;
+        }
+
+        /**
+         * Returns the luminosity of every Pixel, row by row, so that (x, y) is found
+         * at index y * getWidth() + x as an unsigned byte. The plane is computed
+         * again on every call, since the Pixels can change without this Picture
+         * knowing, through a Graphics for one; an operation that reads it more
+         * than once keeps its own.
+         *
+         * @return the luminance plane of this Picture
+         */
+        byte[] luminancePlane() {
+        	return Picture.luminancePlane(this.getRaster());
+        }
+
+        /**
+         * Helper method for luminancePlane() that works on a packed raster.
+         *
+         * @param pixels the packed ARGB Pixels
+         * @return the luminosity of every Pixel, at the same index, as an unsigned byte
+         */
+        static byte[] luminancePlane(int[] pixels) {
+        	byte[] luminance = new byte[pixels.length];
+        	RasterKernels.INSTANCE.luminance(pixels, luminance, 0, pixels.length);
+        	return luminance;
         }
 
         //////////////////////////// Energy /////////////////////////////////
@@ -551,20 +949,12 @@ public class Picture extends SimplePicture
          * @return A new Picture that is the energy version of this Picture.
          */
         public Picture energy(){
-        	Picture picOutput = new Picture(this);
-        	int pictureHeight = this.getHeight();
-            int pictureWidth = this.getWidth();
-            for (int x = 0; x < pictureWidth; x++) {
-                for (int y = 0; y < pictureHeight; y++) {
-                    Pixel currentPixel = picOutput.getPixel(x, y);
-                    int energy = this.getEnergy(x, y);
-                    // sets the R, G, and B values to the energy of the image.
-                    currentPixel.setRed(energy);
-                    currentPixel.setGreen(energy);
-                    currentPixel.setBlue(energy);
-                }
-            }
-            return picOutput;
+        	int[] energies = this.energyPlane();
+        	int[] pixels = this.getRasterCopy();
+        	// sets the R, G, and B values to the energy of the image, which like setRed
+        	// has to stay between 0 and 255
+        	RasterKernels.INSTANCE.grayClamped(energies, pixels, 0, pixels.length);
+        	return this.copyWithRaster(pixels);
         }
 
         /**
@@ -575,24 +965,59 @@ public class Picture extends SimplePicture
          * @param y is the y value of the Pixel to be evaluated
          * @return The energy of this Pixel
          */
-        private int getEnergy(int x, int y) {
-        	// the energy at each pixel is the sum of the absolute values (Math.abs) of two derivatives: 
+        int getEnergy(int x, int y) {
+        	// the energy at each pixel is the sum of the absolute values (Math.abs) of two derivatives:
         	// the horizontal and vertical rates of change in luminosity
-        	int luminTwoX = 0, luminTwoY = 0;
-        	int lumin = luminosityOfPixel(x,y);
-            if (x == this.getWidth()-1) {
-            	luminTwoX = luminosityOfPixel(x-1, y); 
-            }
-            else {
-            	luminTwoX = luminosityOfPixel(x+1, y);
-            }
-            if (y == this.getHeight()-1) {
-            	luminTwoY = luminosityOfPixel(x, y-1);
-            }
-            else {
-            	luminTwoY = luminosityOfPixel(x, y+1);
-            }
-            return Math.abs(luminTwoX - lumin) + Math.abs(luminTwoY - lumin);
+        	int lumin = this.luminosityOfPixel(x, y);
+        	int luminTwoX = this.luminosityOfPixel(x == this.getWidth() - 1 ? x - 1 : x + 1, y);
+        	int luminTwoY = this.luminosityOfPixel(x, y == this.getHeight() - 1 ? y - 1 : y + 1);
+        	return Math.abs(luminTwoX - lumin) + Math.abs(luminTwoY - lumin);
+        }
+
+        /**
+         * Computes the energy of every Pixel, row by row, so that the energy of
+         * (x, y) is found at index y * getWidth() + x.
+         *
+         * @return the energy plane of this Picture
+         */
+        int[] energyPlane() {
+        	return Picture.energyPlane(this.luminancePlane(), this.getWidth(), this.getHeight());
+        }
+
+        /**
+         * Helper method for energyPlane() that works on a luminance plane.
+         *
+         * @param luminance the luminosity of every Pixel, laid out as in getRaster()
+         * @param width the width of the plane
+         * @param height the height of the plane
+         * @return the energy plane of the Pixels
+         */
+        static int[] energyPlane(byte[] luminance, int width, int height) {
+        	int[] energy = new int[width * height];
+        	for (int y = 0; y < height; y++) {
+        		RasterKernels.INSTANCE.energyRow(luminance, width, width, height, y, energy, y * width);
+        	}
+        	return energy;
+        }
+
+        /**
+         * Helper method for energyPlane() that works like getEnergy(), but on a
+         * luminance plane with the Pixel (x, y) at index y * stride + x.
+         *
+         * @param luminance the luminosity of every Pixel, as an unsigned byte
+         * @param stride the distance between the start of two rows in luminance
+         * @param width the number of columns in use in each row
+         * @param height the number of rows
+         * @param x is the x value of the Pixel to be evaluated
+         * @param y is the y value of the Pixel to be evaluated
+         * @return The energy of this Pixel
+         */
+        static int energyOf(byte[] luminance, int stride, int width, int height, int x, int y) {
+        	int index = y * stride + x;
+        	int lumin = luminance[index] & 0xFF;
+        	int luminTwoX = luminance[x == width - 1 ? index - 1 : index + 1] & 0xFF;
+        	int luminTwoY = luminance[y == height - 1 ? index - stride : index + stride] & 0xFF;
+        	return Math.abs(luminTwoX - lumin) + Math.abs(luminTwoY - lumin);
         }
 
 
@@ -607,30 +1032,55 @@ public class Picture extends SimplePicture
          * to test it. See the course assignment for additional details.
          */
         public int[] computeSeam() {
+                return Picture.computeSeam(this.energyPlane(), this.getWidth(), this.getWidth(), this.getHeight());
+        }
+
+        /**
+         * Returns an int array with the y-coordinates (rows) of the lowest-energy
+         * horizontal seam running from the left column to the right column. The
+         * seam is found on this Picture directly rather than on a rotated copy.
+         *
+         * @return the y-coordinate of the seam in every column
+         */
+        public int[] computeHorizontalSeam() {
                 int height = this.getHeight();
                 int width = this.getWidth();
-                int[] seam = new int[height];
-                int[][] table = new int[width][height];
-                int[][] parent = new int[width][height];
-                this.fillTables(table, parent);
-                
-                int minima = table[0][height-1];
-                int minColumn = 0;
-
-                for (int row = height-1; row >= 0; row--) {
-                    for (int col = 0; col < width; col++) {
-                    	if(minima > table[col][row]) {
-                    		minima = table[col][row];
-                    		minColumn = col;
-                    	}
-                    }
-                    seam[row] = minColumn;
-                }
-                // update seam values with values at the minColumn indices within parent 2D array
-                for (int row = height - 1; row > 0; row--) {
-                	seam[row-1]= parent[seam[row]][row];
-                }
-                return seam;
+                return new SeamSolver(height, width).computeSeam(this.energyPlane(), 1, width, height);
+        }
+
+        /**
+         * Finds a low-energy vertical seam coarse to fine: the energy is shrunk by
+         * half again and again, the smallest level is searched in full, and every
+         * larger one only within bandWidth columns of the seam found above it. On
+         * 8K pictures this looks at a small part of the Pixels a full search does.
+         *
+         * The seam is exactly computeSeam() whenever that seam stays within the
+         * bands, but may cost more energy when it does not; wider bands miss it
+         * less often. A bandWidth of 0 or less always does the full search.
+         *
+         * @param bandWidth the number of columns searched on either side of the
+         *      seam of the level above
+         * @return the x-coordinate of the seam in every row
+         */
+        public int[] computeSeam(int bandWidth) {
+                int width = this.getWidth();
+                int height = this.getHeight();
+                return new PyramidSeamSolver(null, height, bandWidth).computeSeam(this.energyPlane(), width, 1, width);
+        }
+
+        /**
+         * Computes the lowest-energy seam of an energy plane laid out row by row,
+         * with the energy of (x, y) at index y * stride + x.
+         *
+         * @param energy the energy plane, as returned by energyPlane()
+         * @param stride the distance between the start of two rows in energy
+         * @param width the number of columns in use in each row
+         * @param height the number of rows
+         * @return the x-coordinate of the seam in every row
+         */
+        static int[] computeSeam(int[] energy, int stride, int width, int height) {
+                // the solver keeps one byte per Pixel instead of the two tables filled by fillTables
+                return new SeamSolver(width, height).computeSeam(energy, stride, width);
         }
         /**
          * helper method fillTables is passed two, 2D arrays and fills them with the
@@ -639,11 +1089,26 @@ public class Picture extends SimplePicture
          * See the course assignment for additional details.
          */
         private void fillTables(int[][] table, int[][] parent) {
-        	for (int y = 0; y < this.getHeight(); y++) {
-            	for (int x = 0; x < this.getWidth(); x++) {
+        	Picture.fillTables(table, parent, this.energyPlane(), this.getWidth());
+        }
+
+        /**
+         * Fills table and parent from a precomputed energy plane instead of calling
+         * getEnergy for every cell.
+         *
+         * @param table the cumulative energy table, indexed [x][y]
+         * @param parent the parent table, indexed [x][y]
+         * @param energy the energy plane, with the energy of (x, y) at y * stride + x
+         * @param stride the distance between the start of two rows in energy
+         */
+        static void fillTables(int[][] table, int[][] parent, int[] energy, int stride) {
+        	int width = table.length;
+        	int height = table[0].length;
+        	for (int y = 0; y < height; y++) {
+            	for (int x = 0; x < width; x++) {
             		if (y == 0) {
             			// first row of table is the first row of the energies themselves
-            			table[x][y] = this.getEnergy(x,0);
+            			table[x][y] = energy[x];
             			// first row of parent set to 0 since there is no row above the first one
                     	parent[x][y] = 0;
             		}
@@ -653,13 +1118,13 @@ public class Picture extends SimplePicture
             			if (x == 0) {
             				minTableValue = Math.min(table[x][y-1], table[x+1][y-1]);
     					}
-    					else if (x == this.getWidth()-1) {
+    					else if (x == width-1) {
     						minTableValue = Math.min(table[x-1][y-1], table[x][y-1]);
     					}
     					else {
     						minTableValue = Math.min(table[x-1][y-1], Math.min(table[x][y-1], table[x+1][y-1]));	
     					}
-            			table[x][y] = this.getEnergy(x,y) + minTableValue;
+            			table[x][y] = energy[y * stride + x] + minTableValue;
             			parent[x][y] = getColumn(table, x, y, minTableValue);
             		}
 				}
@@ -676,7 +1141,7 @@ public class Picture extends SimplePicture
          * @param minTableValue
          * @return column number that holds the minimum table value (above-left, above, and above-right if possible)
          */
-        private int getColumn(int [][] table, int x, int y, int minTableValue) {
+        private static int getColumn(int [][] table, int x, int y, int minTableValue) {
         	int columnNumber = -1;
         	// every cell being searched has a valid cell directly above it. if the value at that cell is the minimum, update
         	// the columnNumber variable from -1 to the respective column value.
@@ -713,7 +1178,16 @@ public class Picture extends SimplePicture
          * @return a new Picture
          */
         public Picture showSeam(){
-        	int[] seam = this.computeSeam();
+        	return this.showSeam(this.computeSeam());
+        }
+
+        /**
+         * Helper method for showSeam() and carve() that paints the given seam red.
+         *
+         * @param seam the x-coordinate of the seam in every row
+         * @return a new Picture
+         */
+        private Picture showSeam(int[] seam){
         	Picture newPicture = new Picture(this);
             for (int y = 0; y < this.getHeight(); y++) {
             	for (int x = 0; x < this.getWidth(); x++) {
@@ -737,35 +1211,66 @@ public class Picture extends SimplePicture
          * but have a width that is one smaller than the original.
          */
         public Picture carve(){
-        	Picture originalPic = new Picture(this.showSeam());
-        	int newWidth = originalPic.getWidth()-1;
-        	int newHeight = originalPic.getHeight();	
-        	int pixelPosition = 0;
+        	return this.carve(this.computeSeam());
+        }
+
+        /**
+         * Helper method for carve() that removes the given seam. Every row is put
+         * together from the Pixels left and right of the seam with two bulk copies,
+         * so no colour is treated specially.
+         *
+         * @param seam the x-coordinate of the seam in every row
+         * @return a new Picture that is one Pixel narrower than this Picture
+         */
+        Picture carve(int[] seam){
+        	int origWidth = this.getWidth();
+        	int newWidth = origWidth-1;
+        	int newHeight = this.getHeight();
         	Picture newPicture = new Picture(newWidth, newHeight);
-        	for (int y = 0; y < originalPic.getHeight(); y++) {
-        		for (int x = 0; x < originalPic.getWidth(); x++) {
-        			Pixel origPix = originalPic.getPixel(x, y);
-        			Pixel newPix = newPicture.getPixel(pixelPosition, y);
-        			Color c = origPix.getColor();
-        			
-        			int red = c.getRed();
-        			int green = c.getGreen();
-        			int blue = c.getBlue();
-        			
-        			// if it's not red, include it in the picture
-        			if (!(red == 255 && green == 0 && blue == 0)) {
-        				newPix.setRed(red);
-        				newPix.setGreen(green);
-        				newPix.setBlue(blue);
-        				pixelPosition++;
-        			}
-        			
-        		}
-        		pixelPosition = 0;
+        	int[] origPixels = this.getRaster();
+        	int[] newPixels = newPicture.getRaster();
+        	for (int y = 0; y < newHeight; y++) {
+        		int x = seam[y];
+        		System.arraycopy(origPixels, y * origWidth, newPixels, y * newWidth, x);
+        		System.arraycopy(origPixels, y * origWidth + x + 1, newPixels, y * newWidth + x, newWidth - x);
         	}
+        	newPicture.setRaster(newPixels);
             return newPicture;
         }
 
+        /**
+         * Removes a seam from a plane laid out row by row, with (x, y) at index
+         * y * stride + x, by moving the rest of every row one place to the left.
+         * The plane keeps its stride; afterwards only width - 1 columns are in use.
+         *
+         * @param plane the plane to remove the seam from
+         * @param stride the distance between the start of two rows in plane
+         * @param width the number of columns in use before the seam is removed
+         * @param seam the x-coordinate of the seam in every row
+         */
+        static void removeSeam(int[] plane, int stride, int width, int[] seam) {
+        	for (int y = 0; y < seam.length; y++) {
+        		int x = seam[y];
+        		System.arraycopy(plane, y * stride + x + 1, plane, y * stride + x, width - x - 1);
+        	}
+        }
+
+        /**
+         * Removes a seam from a plane of bytes, such as the luminance plane, the
+         * same way as removeSeam(int[], int, int, int[]).
+         *
+         * @param plane the plane to remove the seam from
+         * @param stride the distance between the start of two rows in plane
+         * @param width the number of columns in use before the seam is removed
+         * @param seam the x-coordinate of the seam in every row
+         */
+        static void removeSeam(byte[] plane, int stride, int width, int[] seam) {
+        	for (int y = 0; y < seam.length; y++) {
+        		int x = seam[y];
+        		System.arraycopy(plane, y * stride + x + 1, plane, y * stride + x, width - x - 1);
+        	}
+        }
+
         /**
          * This returns a new Picture that has a number of seams removed.
          *
@@ -778,19 +1283,108 @@ public class Picture extends SimplePicture
          * @return a new picture with numSeams removed
          */
         public Picture carveMany(int numSeams){
-        	Picture pic = new Picture(this);
         	if (numSeams > this.getWidth()) {
         		System.err.println("Cannot call carveMany with argument " + numSeams + " on image of width " + this.getWidth());
         	}
-        	else {
+        	else if (numSeams > 0) {
+        		// the carver keeps the energy plane between seams, so only the
+        		// columns next to each removed seam are recomputed; it works on its
+        		// own copy of the Pixels, so this Picture need not be copied first
+        		SeamCarver carver = new SeamCarver(this);
         		// loops over the numSeams number of times 
         		for (int i = 0; i < numSeams; i++) {
-        			pic = pic.carve();
+        			carver.removeSeam(carver.computeSeam());
+        		}
+        		return carver.getPicture();
+        	}
+        	return new Picture(this);
+        }
+
+        /**
+         * Returns a new Picture that has a number of seams removed, like
+         * carveMany(int), but finds every seam coarse to fine like
+         * computeSeam(int). The shrunk levels are only made for the first seam and
+         * then closed up along with the Picture (see PyramidSeamSolver), so later
+         * seams cost a few milliseconds to find on 8K pictures; the rest of the
+         * time goes to removing the seams, as with carveMany(int).
+         *
+         * If the input is greater than the width of the Picture, an error is printed
+         * using System.err and a copy of this Picture is returned.
+         *
+         * @param numSeams is the number of seams to remove
+         * @param bandWidth the number of columns searched on either side of the
+         *      seam of the level above; 0 or less gives carveMany(numSeams)
+         * @return a new picture with numSeams removed
+         */
+        public Picture carveMany(int numSeams, int bandWidth){
+        	if (numSeams > this.getWidth()) {
+        		System.err.println("Cannot call carveMany with argument " + numSeams + " on image of width " + this.getWidth());
+        	}
+        	else if (numSeams > 0) {
+        		SeamCarver carver = new SeamCarver(this);
+        		carver.setBandWidth(bandWidth);
+        		for (int i = 0; i < numSeams; i++) {
+        			carver.removeSeam(carver.computeSeam());
+        		}
+        		return carver.getPicture();
+        	}
+        	return new Picture(this);
+        }
+
+        /**
+         * This returns a new Picture that has a number of horizontal seams removed,
+         * so it is the same width as the original but numSeams Pixels shorter. The
+         * seams are found and removed on this Picture directly, so this costs about
+         * as much as carveMany instead of rotating the Picture back and forth.
+         *
+         * If the input is greater than the height of the Picture, an error is printed
+         * using System.err and a copy of this Picture is returned.
+         *
+         * @param numSeams is the number of horizontal seams to remove
+         * @return a new picture with numSeams rows removed
+         */
+        public Picture carveRows(int numSeams){
+        	if (numSeams > this.getHeight()) {
+        		System.err.println("Cannot call carveRows with argument " + numSeams + " on image of height " + this.getHeight());
+        	}
+        	else if (numSeams > 0) {
+        		SeamCarver carver = new SeamCarver(this, true);
+        		for (int i = 0; i < numSeams; i++) {
+        			carver.removeSeam(carver.computeSeam());
         		}
+        		return carver.getPicture();
         	}
-        	return pic;
+        	return new Picture(this);
         }
 
+        //////////////////////////// Expand /////////////////////////////////
+
+        /**
+         * Returns a new picture that is numSeams Pixels wider, made by finding the
+         * numSeams seams that carveMany(numSeams) would remove and inserting a new
+         * Pixel to the right of every Pixel on them. The new Pixel is the average of
+         * the seam Pixel and its right-hand neighbour (or left-hand neighbour, in
+         * the last column), taken separately for red, green, blue and alpha.
+         *
+         * The seams are all found in one go on a single energy computation by a
+         * SeamIndex, and the wider picture is then written in one pass.
+         *
+         * If the input is greater than the width of the Picture, an error is printed
+         * using System.err and a copy of this Picture is returned.
+         *
+         * @param numSeams is the number of seams to insert
+         * @return a new picture with numSeams Pixels added to every row
+         */
+        public Picture expand(int numSeams){
+        	if (numSeams > this.getWidth()) {
+        		System.err.println("Cannot call expand with argument " + numSeams + " on image of width " + this.getWidth());
+        		return new Picture(this);
+        	}
+        	if (numSeams <= 0) {
+        		return new Picture(this);
+        	}
+        	return new SeamIndex(this, numSeams).carveTo(this, this.getWidth() + numSeams);
+        }
 
         //////////////////////////// Extra Credit /////////////////////////////////
 
@@ -812,40 +1406,8 @@ public class Picture extends SimplePicture
          *      the top left corner (0, 0).
          */
         public Picture chromaKey(int xRef, int yRef, Picture background, int threshold) {
-        	int width = Math.min(this.getWidth(), background.getWidth());
-        	int height = Math.min(this.getHeight(), background.getHeight());
-        	Picture newPic = new Picture(width, height);
-        	Color c = this.getPixel(xRef, yRef).getColor();
-        	
-        	// resets the pixel to the background pixel in the event that the original pixel is similar
-        	for (int x = 0; x < width; x++) {
-        		for (int y = 0; y < height; y++) {
-        			Color originalColor = this.getPixel(x, y).getColor();
-        			Color backgroundColor = background.getPixel(x, y).getColor();
-        			newPic.resetPixel(threshold, x, y, c, originalColor, backgroundColor);
-        		}
-        	}
-            return newPic;
-        }
-        
-        /**
-         * Helper method for chromaKey that resets the color of a given pixel if its color distance 
-         * is less than the threshold value.
-         * 
-         * @param threshold
-         * @param x
-         * @param y
-         * @param c
-         * @param origColor
-         * @param bgColor
-         */
-        private void resetPixel(int threshold, int x, int y, Color c, Color origColor, Color bgColor) {
-            if ((int) Pixel.colorDistance(c, origColor) < threshold) {
-            	this.getPixel(x, y).setColor(bgColor);
-            } 
-            else {
-            	this.getPixel(x, y).setColor(origColor);
-            }
+        	// to key many frames against one background, use ChromaKey.applyAll
+        	return new ChromaKey(this.getBasicPixel(xRef, yRef), threshold).apply(this, background);
         }
 
         //////////////////////////// Flip /////////////////////////////////
@@ -894,29 +1456,25 @@ public class Picture extends SimplePicture
         	return null;
         }
         
-        private void swap(int x, int y, int i, int j) {
-        	Pixel p1 = this.getPixel(x, y);
-        	Pixel p2 = this.getPixel(i, j);
-        	Color temp = p1.getColor();
-        	p1.setColor(p2.getColor());
-        	p2.setColor(temp);
-        }
-        
         /**
          * method for flipping the image over the horizontal axis
          * @return
          */
         private Picture flipHoriz() {
-        	// swaps the top and bottom pixels until the middle is reached
-        	Picture newPic = new Picture(this);
+        	// copies the rows in the opposite order; like setColor, only red, green and
+        	// blue move, and every Pixel keeps the alpha it had in this Picture
         	int height = this.getHeight();
-	       	int width = this.getWidth();
-	       	for(int x = 0; x < width; x++) {
-	       		for (int y = 0; y < height/2; y++) {
-	       			newPic.swap(x, y, x, height-1-y);
-	       		}
-	       	}
-	       	return newPic;
+        	int width = this.getWidth();
+        	int[] pixels = this.getRaster();
+        	int[] newPixels = new int[width * height];
+        	for (int y = 0; y < height; y++) {
+        		int from = (height - 1 - y) * width;
+        		for (int x = 0; x < width; x++) {
+        			int index = y * width + x;
+        			newPixels[index] = (pixels[index] & 0xFF000000) | (pixels[from + x] & 0xFFFFFF);
+        		}
+        	}
+        	return this.copyWithRaster(newPixels);
         }
         
         /**
@@ -924,7 +1482,7 @@ public class Picture extends SimplePicture
          * @return
          */
         private Picture flipVert() {
-        	return this.flipHoriz().rotateRight().rotateRight();
+        	return this.view().flip(VERTICAL).toPicture();
         }
         
         /**
@@ -932,7 +1490,7 @@ public class Picture extends SimplePicture
          * @return
          */
         private Picture flipForwardDiag() {
-        	return this.rotateRight().flipHoriz();
+        	return this.view().flip(FORWARD_DIAGONAL).toPicture();
         }
         
         /**
@@ -940,7 +1498,7 @@ public class Picture extends SimplePicture
          * @return
          */
         private Picture flipBackwardDiag() {
-        	return this.rotateRight().flipHoriz().rotateRight().rotateRight();
+        	return this.view().flip(BACKWARD_DIAGONAL).toPicture();
         }
 
         //////////////////////////// Show Edges /////////////////////////////////
@@ -963,57 +1521,14 @@ public class Picture extends SimplePicture
          *         white.
          */
         public Picture showEdges(int threshold) {
-        	int width = this.getWidth();
-       	 	int height = this.getHeight();
-       	 	int distNorth = 0;
-       	 	int distWest = 0;
-       	 	Picture newPic = new Picture(width, height);
-       	 	for (int x = 0; x < width; x++) {
-       	 		for (int y = 0; y < height; y++) {
-       	 			Pixel newPix = newPic.getPixel(x, y);
-	       	 		Pixel p = this.getPixel(x, y);
-	            	Pixel northPix = this.getValidPixel(x, y - 1);
-	            	Pixel westPix = this.getValidPixel(x - 1, y);
-	            	// if the north pixel exists, calculate the color distance 
-	            	if (northPix != null) {
-	            		distNorth = (int) Pixel.colorDistance(p.getColor(), northPix.getColor());
-	            	}
-	            	// if the west pixel exists, calculate the color distance
-	            	if (westPix != null) {
-	            		distWest = (int) Pixel.colorDistance(p.getColor(), westPix.getColor());
-	            	}
-	            	// if the north or west distance is greater than the threshold, set the new pixel's 
-	            	// color to black, else white 
-	            	if (distNorth > threshold || distWest > threshold)
-       	 			{
-       	 				newPix.setColor(new Color (0, 0, 0, 255)); 
-       	 			}
-       	 			else
-       	 			{
-       	 				newPix.setColor(new Color(255, 255, 255, 255)); 
-       	 			}
-       	 		}
-       	 		// reset the distances to 0 
-       	 		distNorth = 0;
-       	 		distWest = 0;
-       	 	}
-       	 	return newPic;
-       	 }
-
-        /**
-         * Helper method for showEdges; returns the pixel at said location given that its location is valid.
-         * If the location is invalid, the method will return a null.
-         * @param x
-         * @param y
-         * @return 
-         */
-     	private Pixel getValidPixel(int x, int y) {
-     		if (x >= 0 && x < this.getWidth() && y >= 0 && y < this.getHeight()) {
-     			return this.getPixel(x, y);
-     		}
-     		return null;
-     	}
-        
+        	Picture newPic = new Picture(this.getWidth(), this.getHeight());
+        	int[] newPixels = newPic.getRaster();
+        	// compares squared distances, in parallel by rows (see EdgeDetector)
+        	EdgeDetector.findEdges(this.getRaster(), newPixels, this.getWidth(), this.getHeight(), threshold);
+        	newPic.setRaster(newPixels);
+        	return newPic;
+        }
+
         //////////////////////////////// Blur //////////////////////////////////
 
         /**
@@ -1029,6 +1544,11 @@ public class Picture extends SimplePicture
          *
          * The red, blue, green and alpha values should each be averaged separately.
          *
+         * Each average is rounded down. The work done per pixel does not depend on
+         * blurThreshold (see BoxBlur), and strips of rows are blurred in parallel.
+         * If blurThreshold is negative, an error message is printed using
+         * System.err and a copy of this Picture is returned.
+         *
          * @param blurThreshold
          *            Size of the blurring square around the pixel.
          *
@@ -1036,8 +1556,13 @@ public class Picture extends SimplePicture
          *         a blurring square of size (2 * threshold) + 1.
          */
         public Picture blur(int blurThreshold) {
-                // TODO: Write blur (Extra Credit)
-                return null;
+        	if (blurThreshold < 0) {
+        		System.err.println("Cannot call blur with argument " + blurThreshold);
+        		return new Picture(this);
+        	}
+        	// blur only reads the raster, so it can work on the one behind the image
+        	int[] blurred = BoxBlur.blur(this.getRaster(), this.getWidth(), this.getHeight(), blurThreshold);
+        	return this.copyWithRaster(blurred);
         }
 
         //////////////////////////////// Paint Bucket //////////////////////////////////
@@ -1052,10 +1577,122 @@ public class Picture extends SimplePicture
          *      selected pixel, and which differ from the selected pixel within the
          *      provided threshold (in terms of color distance), are colored with
          *      the new color provided.
+         *
+         *      Like chromaKey, a pixel is within the threshold when its color
+         *      distance is less than it, and like Pixel.setColor, only red, green
+         *      and blue are replaced. The fill goes up, down, left and right, a
+         *      row of pixels at a time (see FloodFill), so it never recurses. If
+         *      (x, y) is not in this Picture, an error message is printed using
+         *      System.err and a copy of this Picture is returned.
+         *
+         *      If precomputeRegions was called for the same threshold and a seed of
+         *      the same color, the region is already known and is only recolored.
          */
         public Picture paintBucket(int x, int y, int threshold, Color newColor) {
-                // TODO: Write paintBucket (Extra Credit)
-                return null;
+        	if (!this.inBounds("paintBucket", x, y)) {
+        		return new Picture(this);
+        	}
+        	RegionIndex index = this.regionIndex(threshold, this.getBasicPixel(x, y));
+        	if (index != null) {
+        		// only the tiles the region is in are copied
+        		Picture newPic = new Picture(this);
+        		index.fill(newPic.tiles(), x, y, newColor.getRGB());
+        		return newPic;
+        	}
+        	int[] pixels = this.getRasterCopy();
+        	FloodFill.fill(pixels, this.getWidth(), this.getHeight(), x, y, threshold, newColor.getRGB());
+        	return this.copyWithRaster(pixels);
+        }
+
+        /**
+         * Labels, once, every region that paintBucket would fill with this
+         * threshold from a seed of the color of (x, y), wherever the seed is.
+         * Later calls to paintBucket with the same threshold and a seed of that
+         * color only recolor the region, without searching for it (see
+         * RegionIndex).
+         *
+         * The regions of a few seed colors are kept for one threshold at a time,
+         * and are only used while the Pixels are the ones they were labelled from,
+         * however the Pixels change (see regionsCurrent), so checking them costs
+         * nothing per call. If (x, y) is not in this Picture, an error message is
+         * printed using System.err and nothing is labelled.
+         *
+         * @param x x-coordinate of a pixel of the seed color.
+         * @param y y-coordinate of a pixel of the seed color.
+         * @param threshold Threshold that paintBucket will be called with.
+         */
+        public void precomputeRegions(int x, int y, int threshold) {
+        	if (!this.inBounds("precomputeRegions", x, y)) {
+        		return;
+        	}
+        	TiledDataBuffer tiles = this.tiles();
+        	if (tiles == null) {
+        		// the writes to an image SimplePicture.load put in place of the tiles
+        		// cannot be counted, so its regions could never be trusted
+        		return;
+        	}
+        	int seedColor = this.getBasicPixel(x, y);
+        	if (this.regions == null || this.regionsThreshold != threshold || !this.regionsCurrent()) {
+        		// least recently used first, so the oldest color goes when it is full
+        		@SuppressWarnings("serial")
+        		Map<Integer, RegionIndex> regions = new LinkedHashMap<Integer, RegionIndex>(16, 0.75f, true) {
+        			@Override
+        			protected boolean removeEldestEntry(Map.Entry<Integer, RegionIndex> eldest) {
+        				return this.size() > MAX_REGION_INDEXES;
+        			}
+        		};
+        		this.regions = regions;
+        		this.regionsThreshold = threshold;
+        		this.regionsTiles = tiles;
+        		this.regionsVersion = tiles.version();
+        	}
+        	else if (this.regions.get(seedColor & 0x00FFFFFF) != null) {
+        		return;
+        	}
+        	this.regions.put(seedColor & 0x00FFFFFF,
+        			new RegionIndex(this.getRaster(), this.getWidth(), this.getHeight(), seedColor, threshold));
+        }
+
+        /**
+         * Helper method for paintBucket and precomputeRegions that finds the
+         * regions labelled for a threshold and seed color.
+         *
+         * @return the regions, or null if they were not labelled
+         */
+        private RegionIndex regionIndex(int threshold, int seedColor) {
+        	if (this.regions == null || this.regionsThreshold != threshold || !this.regionsCurrent()) {
+        		return null;
+        	}
+        	// the color distance does not look at alpha
+        	return this.regions.get(seedColor & 0x00FFFFFF);
+        }
+
+        /**
+         * Helper method for paintBucket and precomputeRegions that checks the
+         * Pixels are still the ones the regions were labelled from. Every write
+         * to a Picture, a Graphics included, goes through its tiles, which count
+         * them (see TiledDataBuffer.version).
+         *
+         * @return whether the regions are up to date
+         */
+        private boolean regionsCurrent() {
+        	TiledDataBuffer tiles = this.tiles();
+        	return tiles != null && tiles == this.regionsTiles && tiles.version() == this.regionsVersion;
+        }
+
+        /**
+         * Helper method for paintBucket and precomputeRegions that checks a seed
+         * is in this Picture, printing an error message using System.err if not.
+         *
+         * @return whether (x, y) is in this Picture
+         */
+        private boolean inBounds(String method, int x, int y) {
+        	if (x >= 0 && x < this.getWidth() && y >= 0 && y < this.getHeight()) {
+        		return true;
+        	}
+        	System.err.println("Cannot call " + method + " at (" + x + ", " + y + ") on image of size "
+        			+ this.getWidth() + "x" + this.getHeight());
+        	return false;
         }
 
         //////////////////////////////// Main Method //////////////////////////////////
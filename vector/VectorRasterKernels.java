@@ -0,0 +1,174 @@
+package com.gradescope.photoeditor;
+
+import jdk.incubator.vector.ByteVector;
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.Vector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorShape;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * RasterKernels written against the incubating Vector API, so that each step
+ * works on as many Pixels as fit in the processor's widest vector: 8 with
+ * AVX2, 16 with AVX-512. The Pixels left over at the end of a range, and the
+ * last column and row of the energy plane, go through the scalar versions.
+ *
+ * The results are the same as RasterKernels to the bit. Luminosity uses the
+ * fixed-point formula of Picture.luminosityOf, and the few lanes where that
+ * formula hands over to doubles are patched one at a time. The average in
+ * grayscale divides by 3 as a multiply and a shift, which is exact for every
+ * sum of three channels.
+ *
+ * Only created by RasterKernels.load(), which falls back to the scalar kernels
+ * if this class cannot be loaded. It is kept out of the other sources, since
+ * it only compiles with --add-modules jdk.incubator.vector; compile it along
+ * with them to use it.
+ */
+final class VectorRasterKernels extends RasterKernels
+{
+        private static final VectorSpecies<Integer> INTS = IntVector.SPECIES_PREFERRED;
+
+        // one byte for every int lane, for reading and writing the luminance plane
+        private static final VectorSpecies<Byte> BYTES =
+        		VectorSpecies.of(byte.class, VectorShape.forBitSize(Math.max(64, INTS.vectorBitSize() / 4)));
+
+        /**
+         * @throws UnsupportedOperationException if the vectors are too short to
+         *      pay for themselves
+         */
+        VectorRasterKernels() {
+        	if (INTS.vectorBitSize() < 256) {
+        		throw new UnsupportedOperationException("Vectors of " + INTS.vectorBitSize() + " bits are too short");
+        	}
+        }
+
+        @Override
+        void luminance(int[] pixels, byte[] luminance, int from, int to) {
+        	int i = from;
+        	for (; i <= to - INTS.length(); i += INTS.length()) {
+        		IntVector argb = IntVector.fromArray(INTS, pixels, i);
+        		IntVector weighted = VectorRasterKernels.weighted(argb);
+        		IntVector lumin = weighted.mul(5243).lanewise(VectorOperators.LSHR, 19);
+        		lumin.convertShape(VectorOperators.I2B, BYTES, 0).reinterpretAsBytes().intoArray(luminance, i);
+        		VectorMask<Integer> exact = lumin.mul(100).eq(weighted);
+        		if (exact.anyTrue()) {
+        			// these sums are exact multiples of 100, left to the double formula
+        			for (long lanes = exact.toLong(); lanes != 0; lanes &= lanes - 1) {
+        				int index = i + Long.numberOfTrailingZeros(lanes);
+        				luminance[index] = (byte) Picture.luminosityOf(pixels[index]);
+        			}
+        		}
+        	}
+        	super.luminance(pixels, luminance, i, to);
+        }
+
+        @Override
+        void energyRow(byte[] luminance, int stride, int width, int height, int y, int[] energy, int energyStart) {
+        	int x = 0;
+        	if (y < height - 1) {
+        		// every Pixel but the last in the row has a neighbour to the right and below
+        		int rowStart = y * stride;
+        		for (; x <= width - 1 - INTS.length(); x += INTS.length()) {
+        			IntVector lumin = VectorRasterKernels.levels(luminance, rowStart + x);
+        			IntVector luminTwoX = VectorRasterKernels.levels(luminance, rowStart + x + 1);
+        			IntVector luminTwoY = VectorRasterKernels.levels(luminance, rowStart + x + stride);
+        			luminTwoX.sub(lumin).abs().add(luminTwoY.sub(lumin).abs()).intoArray(energy, energyStart + x);
+        		}
+        	}
+        	for (; x < width; x++) {
+        		energy[energyStart + x] = Picture.energyOf(luminance, stride, width, height, x, y);
+        	}
+        }
+
+        @Override
+        void gray(byte[] levels, int[] pixels, int from, int to) {
+        	int i = from;
+        	for (; i <= to - INTS.length(); i += INTS.length()) {
+        		IntVector level = VectorRasterKernels.levels(levels, i);
+        		VectorRasterKernels.gray(IntVector.fromArray(INTS, pixels, i), level).intoArray(pixels, i);
+        	}
+        	super.gray(levels, pixels, i, to);
+        }
+
+        @Override
+        void grayClamped(int[] levels, int[] pixels, int from, int to) {
+        	int i = from;
+        	for (; i <= to - INTS.length(); i += INTS.length()) {
+        		IntVector level = IntVector.fromArray(INTS, levels, i).min(255);
+        		VectorRasterKernels.gray(IntVector.fromArray(INTS, pixels, i), level).intoArray(pixels, i);
+        	}
+        	super.grayClamped(levels, pixels, i, to);
+        }
+
+        @Override
+        void grayscale(int[] pixels, int from, int to) {
+        	int i = from;
+        	for (; i <= to - INTS.length(); i += INTS.length()) {
+        		IntVector argb = IntVector.fromArray(INTS, pixels, i);
+        		IntVector sum = VectorRasterKernels.channel(argb, 16).add(VectorRasterKernels.channel(argb, 8))
+        				.add(VectorRasterKernels.channel(argb, 0));
+        		// (sum * 683) >> 11 is sum / 3 for every sum up to 765
+        		IntVector average = sum.mul(683).lanewise(VectorOperators.LSHR, 11);
+        		VectorRasterKernels.gray(argb, average).intoArray(pixels, i);
+        	}
+        	super.grayscale(pixels, i, to);
+        }
+
+        @Override
+        void negate(int[] pixels, int from, int to) {
+        	int i = from;
+        	for (; i <= to - INTS.length(); i += INTS.length()) {
+        		IntVector.fromArray(INTS, pixels, i).lanewise(VectorOperators.XOR, 0x00FFFFFF).intoArray(pixels, i);
+        	}
+        	super.negate(pixels, i, to);
+        }
+
+        @Override
+        void add(int[] pixels, int from, int to, int r, int g, int b) {
+        	int i = from;
+        	for (; i <= to - INTS.length(); i += INTS.length()) {
+        		IntVector argb = IntVector.fromArray(INTS, pixels, i);
+        		IntVector red = VectorRasterKernels.channel(argb, 16).add(r).max(0).min(255);
+        		IntVector green = VectorRasterKernels.channel(argb, 8).add(g).max(0).min(255);
+        		IntVector blue = VectorRasterKernels.channel(argb, 0).add(b).max(0).min(255);
+        		argb.and(0xFF000000)
+        				.or(red.lanewise(VectorOperators.LSHL, 16))
+        				.or(green.lanewise(VectorOperators.LSHL, 8))
+        				.or(blue)
+        				.intoArray(pixels, i);
+        	}
+        	super.add(pixels, i, to, r, g, b);
+        }
+
+        /**
+         * @return 21 * red + 72 * green + 7 * blue of every lane
+         */
+        private static IntVector weighted(IntVector argb) {
+        	return VectorRasterKernels.channel(argb, 16).mul(21)
+        			.add(VectorRasterKernels.channel(argb, 8).mul(72))
+        			.add(VectorRasterKernels.channel(argb, 0).mul(7));
+        }
+
+        /**
+         * @return the 8 bits starting at shift of every lane
+         */
+        private static IntVector channel(IntVector argb, int shift) {
+        	return argb.lanewise(VectorOperators.LSHR, shift).and(0xFF);
+        }
+
+        /**
+         * Reads one unsigned byte per lane, starting at index.
+         */
+        private static IntVector levels(byte[] levels, int index) {
+        	Vector<Integer> signed = ByteVector.fromArray(BYTES, levels, index).convertShape(VectorOperators.B2I, INTS, 0);
+        	return ((IntVector) signed).and(0xFF);
+        }
+
+        /**
+         * @return the Pixels with their alpha and every color channel set to level
+         */
+        private static IntVector gray(IntVector argb, IntVector level) {
+        	return argb.and(0xFF000000).or(level.mul(0x010101));
+        }
+}